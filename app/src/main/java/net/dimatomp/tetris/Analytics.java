@@ -0,0 +1,180 @@
+package net.dimatomp.tetris;
+
+import android.content.Context;
+import android.util.Log;
+
+import net.dimatomp.tetris.stats.EventLog;
+import net.dimatomp.tetris.stats.EventRecorder;
+import net.dimatomp.tetris.stats.StatsAggregator;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+// Per game statistics. Games write their events into a memory mapped log, one thread folds it into
+// summaries every few seconds while a game or the menu is showing and saves them, so that the menu has
+// them at once after a restart.
+class Analytics {
+    private static final String TAG = "Analytics";
+    private static final String LOG_DIRECTORY = "events";
+    private static final String STATS_NAME = "stats.bin";
+    // 64k events a segment, a few hours of fast play for the whole log.
+    private static final int SEGMENT_BYTES = 1 << 20;
+    private static final int MAX_SEGMENTS = 8;
+    private static final long UPDATE_SECONDS = 5;
+    private static Analytics instance;
+
+    private final File statsFile;
+    private final Random random = new Random();
+    // Daemon, it is idle whenever nothing is showing and must not keep the process alive.
+    private final ScheduledExecutorService executor = Executors.newSingleThreadScheduledExecutor(
+            new ThreadFactory() {
+                @Override
+                public Thread newThread(Runnable runnable) {
+                    Thread thread = new Thread(runnable, TAG);
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            });
+    // Opened on the executor, the menu starts it long before a game needs it.
+    private final Future<EventLog> log;
+    private volatile StatsAggregator aggregator;
+    // Guarded by this, the number of resumed activities and their periodic update.
+    private int visible;
+    private ScheduledFuture<?> updates;
+
+    private Analytics(Context context) {
+        final File directory = new File(context.getFilesDir(), LOG_DIRECTORY);
+        statsFile = new File(context.getFilesDir(), STATS_NAME);
+        log = executor.submit(new Callable<EventLog>() {
+            @Override
+            public EventLog call() throws IOException {
+                EventLog result = new EventLog(directory, SEGMENT_BYTES, MAX_SEGMENTS, executor);
+                StatsAggregator loaded = new StatsAggregator(result);
+                // Without the saved summaries, the log is read again from its start.
+                if (!load(loaded))
+                    loaded = new StatsAggregator(result);
+                aggregator = loaded;
+                return result;
+            }
+        });
+    }
+
+    static synchronized Analytics get(Context context) {
+        if (instance == null)
+            instance = new Analytics(context.getApplicationContext());
+        return instance;
+    }
+
+    // Null until the saved summaries are loaded, which is right after the first get().
+    StatsAggregator getAggregator() {
+        return aggregator;
+    }
+
+    // Runs the callback on the executor once the log is open, or could not be opened.
+    void whenOpen(Runnable done) {
+        // The executor runs tasks without a delay in order, the one opening the log went first.
+        executor.execute(done);
+    }
+
+    // A recorder for a new or continued game, null if the log could not be opened. Does not wait for
+    // the log, null as well before whenOpen() called back.
+    EventRecorder newRecorder(GameSession session) {
+        if (!log.isDone())
+            return null;
+        try {
+            return new EventRecorder(log.get(), session, random.nextInt() | 1);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (ExecutionException e) {
+            Log.w(TAG, "Could not open the event log", e.getCause());
+        }
+        return null;
+    }
+
+    // From onResume() of every activity that records or shows statistics.
+    synchronized void resume() {
+        if (visible++ > 0)
+            return;
+        updates = executor.scheduleWithFixedDelay(new Runnable() {
+            @Override
+            public void run() {
+                update();
+            }
+        }, UPDATE_SECONDS, UPDATE_SECONDS, TimeUnit.SECONDS);
+    }
+
+    // From the matching onPause(). The last one stops the updates after folding in what is left.
+    synchronized void pause() {
+        if (--visible > 0)
+            return;
+        updates.cancel(false);
+        updates = null;
+        executor.execute(new Runnable() {
+            @Override
+            public void run() {
+                update();
+            }
+        });
+    }
+
+    // Folds in the latest events, then runs the callback on the executor.
+    void refresh(final Runnable done) {
+        executor.execute(new Runnable() {
+            @Override
+            public void run() {
+                update();
+                done.run();
+            }
+        });
+    }
+
+    private void update() {
+        StatsAggregator current = aggregator;
+        if (current == null)
+            return;
+        try {
+            if (current.update())
+                save(current);
+        } catch (IOException e) {
+            Log.w(TAG, "Could not update the statistics", e);
+        }
+    }
+
+    private boolean load(StatsAggregator target) {
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(statsFile)))) {
+            target.load(in);
+            return true;
+        } catch (FileNotFoundException e) {
+            return false;
+        } catch (IOException e) {
+            Log.w(TAG, "Could not load the statistics", e);
+            return false;
+        }
+    }
+
+    // Through a temporary file, a crash leaves either the old summaries or the new ones.
+    private void save(StatsAggregator source) throws IOException {
+        File tempFile = new File(statsFile.getPath() + ".tmp");
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tempFile)))) {
+            source.save(out);
+        }
+        if (!tempFile.renameTo(statsFile))
+            throw new IOException("Could not replace " + statsFile);
+    }
+}
@@ -0,0 +1,18 @@
+package net.dimatomp.tetris;
+
+import android.os.Trace;
+
+import net.dimatomp.tetris.metrics.Tracer;
+
+// Timed sections show up in systrace under the names of their histograms.
+class AndroidTracer implements Tracer {
+    @Override
+    public void beginSection(String name) {
+        Trace.beginSection(name);
+    }
+
+    @Override
+    public void endSection() {
+        Trace.endSection();
+    }
+}
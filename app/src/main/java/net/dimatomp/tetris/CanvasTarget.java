@@ -0,0 +1,66 @@
+package net.dimatomp.tetris;
+
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.graphics.Paint;
+import android.graphics.Rect;
+
+import net.dimatomp.tetris.render.RenderTarget;
+
+// FieldRenderer output on an Android canvas: a locked surface, the board layer or any offscreen bitmap.
+class CanvasTarget implements RenderTarget {
+    private final Paint blankPaint = new Paint();
+    private final Paint borderPaint = new Paint();
+    private final Paint ghostPaint = new Paint();
+    // Reused by every call, which runs for every cell drawn.
+    private final Rect area = new Rect();
+    private Canvas canvas;
+    private Bitmap layer;
+    private Bitmap blockSprite;
+    private Bitmap figureSprite;
+
+    CanvasTarget(int blankColor, int borderColor, float strokeSize) {
+        blankPaint.setColor(blankColor);
+        blankPaint.setStyle(Paint.Style.FILL);
+        borderPaint.setColor(borderColor);
+        borderPaint.setStyle(Paint.Style.STROKE);
+        borderPaint.setStrokeWidth(strokeSize);
+        ghostPaint.setAlpha(0x50);
+    }
+
+    void setCanvas(Canvas canvas) {
+        this.canvas = canvas;
+    }
+
+    // What drawLayer() copies from.
+    void setLayer(Bitmap layer) {
+        this.layer = layer;
+    }
+
+    void setSprites(Bitmap blockSprite, Bitmap figureSprite) {
+        this.blockSprite = blockSprite;
+        this.figureSprite = figureSprite;
+    }
+
+    @Override
+    public void fillBackground(int left, int top, int right, int bottom) {
+        canvas.drawRect(left, top, right, bottom, blankPaint);
+    }
+
+    @Override
+    public void drawBorder(float left, float top, float right, float bottom) {
+        canvas.drawRect(left, top, right, bottom, borderPaint);
+    }
+
+    @Override
+    public void drawSprite(int sprite, int left, int top, int right, int bottom) {
+        area.set(left, top, right, bottom);
+        canvas.drawBitmap(sprite == BLOCK ? blockSprite : figureSprite, null, area, sprite == GHOST ? ghostPaint : null);
+    }
+
+    @Override
+    public void drawLayer(int left, int top, int right, int bottom) {
+        area.set(left, top, right, bottom);
+        canvas.drawBitmap(layer, area, area, null);
+    }
+}
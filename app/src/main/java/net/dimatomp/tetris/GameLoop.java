@@ -0,0 +1,123 @@
+package net.dimatomp.tetris;
+
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.os.Process;
+import android.view.Choreographer;
+
+import net.dimatomp.tetris.metrics.Counter;
+import net.dimatomp.tetris.metrics.LatencyHistogram;
+import net.dimatomp.tetris.metrics.Metrics;
+
+// Runs the game on its own thread: logic steps at a fixed timestep out of an accumulator,
+// drawing at most once per display frame, paced by the Choreographer of that thread.
+class GameLoop implements Choreographer.FrameCallback {
+    // A longer stall is not caught up with, the game just pauses for that time.
+    private static final long MAX_FRAME_NANOS = 250000000L;
+    // Time between frames shows the jitter of the ticks, frame time the work done for them.
+    private static final LatencyHistogram frameInterval = Metrics.histogram("loop.frameInterval");
+    private static final LatencyHistogram frameTime = Metrics.histogram("loop.frame");
+    private static final Counter stalls = Metrics.counter("loop.stalls");
+
+    private final Game game;
+    private HandlerThread thread;
+    private Handler handler;
+    private Choreographer choreographer;
+    private volatile boolean running;
+    private long lastFrameNanos;
+    private long accumulator;
+
+    GameLoop(Game game) {
+        this.game = game;
+    }
+
+    void start() {
+        if (thread != null)
+            return;
+        thread = new HandlerThread("tetris-game", Process.THREAD_PRIORITY_DISPLAY);
+        thread.start();
+        handler = new Handler(thread.getLooper());
+        running = true;
+        handler.post(new Runnable() {
+            @Override
+            public void run() {
+                choreographer = Choreographer.getInstance();
+                lastFrameNanos = 0;
+                accumulator = 0;
+                choreographer.postFrameCallback(GameLoop.this);
+            }
+        });
+    }
+
+    // Waits for the current frame to finish unless called from the game thread itself.
+    void stop() {
+        if (thread == null)
+            return;
+        running = false;
+        HandlerThread stopped = thread;
+        thread = null;
+        handler = null;
+        stopped.quitSafely();
+        if (Thread.currentThread() != stopped) {
+            try {
+                stopped.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    // Stops stepping and drawing right away, the thread lives on until stop().
+    void halt() {
+        running = false;
+    }
+
+    boolean isRunning() {
+        return thread != null;
+    }
+
+    // Runs the task on the game thread before the next frame, dropped while the loop is stopped.
+    boolean post(Runnable task) {
+        Handler current = handler;
+        return current != null && current.post(task);
+    }
+
+    @Override
+    public void doFrame(long frameTimeNanos) {
+        if (!running)
+            return;
+        long start = frameTime.start();
+        if (lastFrameNanos != 0) {
+            long interval = frameTimeNanos - lastFrameNanos;
+            frameInterval.record(interval);
+            if (interval > MAX_FRAME_NANOS)
+                stalls.increment();
+            accumulator += Math.min(interval, MAX_FRAME_NANOS);
+        }
+        lastFrameNanos = frameTimeNanos;
+        long step;
+        while (running && accumulator >= (step = game.getStepNanos())) {
+            // Input from before the time of the step goes first.
+            game.input(frameTimeNanos - accumulator + step);
+            accumulator -= step;
+            game.step();
+        }
+        if (running) {
+            game.input(frameTimeNanos);
+            game.render();
+            choreographer.postFrameCallback(this);
+        }
+        frameTime.stop(start);
+    }
+
+    interface Game {
+        long getStepNanos();
+
+        // Applies the input given up to the time, on the clock of System.nanoTime().
+        void input(long nanos);
+
+        void step();
+
+        void render();
+    }
+}
@@ -1,21 +1,60 @@
 package net.dimatomp.tetris;
 
 import android.content.ContentProvider;
+import android.content.ContentUris;
 import android.content.ContentValues;
 import android.content.Context;
+import android.content.UriMatcher;
 import android.database.Cursor;
+import android.database.MatrixCursor;
 import android.database.sqlite.SQLiteDatabase;
 import android.database.sqlite.SQLiteOpenHelper;
+import android.database.sqlite.SQLiteStatement;
 import android.net.Uri;
 import android.provider.BaseColumns;
 
+import static net.dimatomp.tetris.HighScoreStorage.HighScoreColumns.RANK;
 import static net.dimatomp.tetris.HighScoreStorage.HighScoreColumns.TABLE_NAME;
 import static net.dimatomp.tetris.HighScoreStorage.HighScoreColumns.TIME;
 import static net.dimatomp.tetris.HighScoreStorage.HighScoreColumns.VALUE;
 import static net.dimatomp.tetris.HighScoreStorage.HighScoreColumns._ID;
 
+// Holds one connection for the life of the process: the framework caches compiled statements per
+// connection, so queries are only prepared again after it was closed.
 public class HighScoreStorage extends ContentProvider {
+    public static final String AUTHORITY = "net.dimatomp.tetris";
+    public static final Uri HIGH_SCORE_URI = Uri.parse("content://" + AUTHORITY + "/highscore");
+    // Best first with ranks, paged by the limit and offset query parameters. leaderboard/best is
+    // the best score, leaderboard/rank/<value> the rank a score would take. A rank is one more than the
+    // number of better scores, equal scores share it. Bad or negative parameters fall back to the
+    // default, or are clamped to the range.
+    public static final Uri LEADERBOARD_URI = Uri.parse("content://" + AUTHORITY + "/leaderboard");
+    public static final String PARAM_LIMIT = "limit";
+    public static final String PARAM_OFFSET = "offset";
+    private static final int DEFAULT_LIMIT = 50;
+    private static final int MAX_LIMIT = 1000;
+    private static final int MAX_OFFSET = Integer.MAX_VALUE - MAX_LIMIT;
+
+    private static final int HIGH_SCORES = 1;
+    private static final int LEADERBOARD = 2;
+    private static final int BEST = 3;
+    private static final int RANK_OF = 4;
+    private static final UriMatcher uriMatcher = new UriMatcher(UriMatcher.NO_MATCH);
+
+    static {
+        uriMatcher.addURI(AUTHORITY, "highscore", HIGH_SCORES);
+        uriMatcher.addURI(AUTHORITY, "leaderboard", LEADERBOARD);
+        uriMatcher.addURI(AUTHORITY, "leaderboard/best", BEST);
+        uriMatcher.addURI(AUTHORITY, "leaderboard/rank/#", RANK_OF);
+    }
+
+    private static final String[] LEADERBOARD_COLUMNS = {_ID, TIME, VALUE, RANK};
+
     private DBHelper instance;
+    private SQLiteDatabase database;
+    private SQLiteStatement insertStatement;
+    private SQLiteStatement rankStatement;
+    private final LeaderboardCache leaderboard = new LeaderboardCache(2 * DEFAULT_LIMIT);
 
     @Override
     public int delete(Uri uri, String selection, String[] selectionArgs) {
@@ -30,23 +69,207 @@ public class HighScoreStorage extends ContentProvider {
 
     @Override
     public Uri insert(Uri uri, ContentValues values) {
-        try (SQLiteDatabase database = instance.getWritableDatabase()) {
-            database.insert(TABLE_NAME, null, values);
-            return Uri.parse("content://net.dimatomp.tetris/highscore");
+        SQLiteStatement statement = getInsertStatement();
+        long id;
+        synchronized (statement) {
+            id = insertRow(statement, values);
+        }
+        if (id != -1) {
+            addToLeaderboard(id, values);
+            notifyChange();
         }
+        return ContentUris.withAppendedId(HIGH_SCORE_URI, id);
+    }
+
+    // All rows in one transaction, observers hear about them once.
+    @Override
+    public int bulkInsert(Uri uri, ContentValues[] values) {
+        SQLiteDatabase db = getDatabase();
+        SQLiteStatement statement = getInsertStatement();
+        long[] ids = new long[values.length];
+        synchronized (statement) {
+            db.beginTransaction();
+            try {
+                for (int i = 0; i < values.length; i++)
+                    ids[i] = insertRow(statement, values[i]);
+                db.setTransactionSuccessful();
+            } finally {
+                db.endTransaction();
+            }
+        }
+        int count = 0;
+        for (int i = 0; i < values.length; i++) {
+            if (ids[i] != -1) {
+                addToLeaderboard(ids[i], values[i]);
+                count++;
+            }
+        }
+        if (count != 0)
+            notifyChange();
+        return count;
+    }
+
+    private static long insertRow(SQLiteStatement statement, ContentValues values) {
+        bindLong(statement, 1, values.getAsLong(TIME));
+        bindLong(statement, 2, values.getAsLong(VALUE));
+        return statement.executeInsert();
+    }
+
+    private void addToLeaderboard(long id, ContentValues values) {
+        Long time = values.getAsLong(TIME);
+        leaderboard.add(id, time == null ? 0 : time, values.getAsInteger(VALUE));
+    }
+
+    private void notifyChange() {
+        getContext().getContentResolver().notifyChange(HIGH_SCORE_URI, null);
+        getContext().getContentResolver().notifyChange(LEADERBOARD_URI, null);
+    }
+
+    private static void bindLong(SQLiteStatement statement, int index, Long value) {
+        if (value == null)
+            statement.bindNull(index);
+        else
+            statement.bindLong(index, value);
     }
 
+    // Runs on the main thread before any activity, so nothing is done until the first query.
     @Override
     public boolean onCreate() {
-        instance = new DBHelper(getContext());
         return true;
     }
 
+    // Opened on first use rather than in onCreate(), which runs on the main thread at process start.
+    private synchronized SQLiteDatabase getDatabase() {
+        if (database == null) {
+            if (instance == null)
+                instance = new DBHelper(getContext());
+            database = instance.getWritableDatabase();
+        }
+        return database;
+    }
+
+    private synchronized SQLiteStatement getInsertStatement() {
+        if (insertStatement == null)
+            insertStatement = getDatabase().compileStatement("INSERT INTO " + TABLE_NAME +
+                    "(" + TIME + ", " + VALUE + ") VALUES (?, ?)");
+        return insertStatement;
+    }
+
+    private synchronized SQLiteStatement getRankStatement() {
+        if (rankStatement == null)
+            rankStatement = getDatabase().compileStatement("SELECT COUNT(*) FROM " + TABLE_NAME +
+                    " WHERE " + VALUE + " > ?");
+        return rankStatement;
+    }
+
+    @Override
+    public synchronized void shutdown() {
+        if (insertStatement != null)
+            insertStatement.close();
+        if (rankStatement != null)
+            rankStatement.close();
+        insertStatement = null;
+        rankStatement = null;
+        if (instance != null)
+            instance.close();
+        database = null;
+    }
+
     @Override
     public Cursor query(Uri uri, String[] projection, String selection,
                         String[] selectionArgs, String sortOrder) {
-        SQLiteDatabase database = instance.getReadableDatabase();
-        return database.query(TABLE_NAME, projection, selection, selectionArgs, null, null, sortOrder);
+        Cursor result;
+        switch (uriMatcher.match(uri)) {
+            case HIGH_SCORES:
+                result = getDatabase().query(TABLE_NAME, projection, selection, selectionArgs, null, null, sortOrder);
+                break;
+            case LEADERBOARD:
+                result = queryLeaderboard(getIntParameter(uri, PARAM_OFFSET, 0, MAX_OFFSET),
+                        getIntParameter(uri, PARAM_LIMIT, DEFAULT_LIMIT, MAX_LIMIT));
+                break;
+            case BEST:
+                result = queryLeaderboard(0, 1);
+                break;
+            case RANK_OF:
+                result = new MatrixCursor(new String[]{RANK}, 1);
+                ((MatrixCursor) result).addRow(new Object[]{rank(parseScore(uri.getLastPathSegment()))});
+                break;
+            default:
+                throw new IllegalArgumentException("Unknown URI " + uri);
+        }
+        result.setNotificationUri(getContext().getContentResolver(),
+                uriMatcher.match(uri) == HIGH_SCORES ? HIGH_SCORE_URI : LEADERBOARD_URI);
+        return result;
+    }
+
+    private static int getIntParameter(Uri uri, String name, int defaultValue, int max) {
+        String value = uri.getQueryParameter(name);
+        if (value == null)
+            return defaultValue;
+        try {
+            int result = Integer.parseInt(value);
+            return result < 0 ? defaultValue : Math.min(result, max);
+        } catch (NumberFormatException e) {
+            return defaultValue;
+        }
+    }
+
+    // The matcher lets only digits through, a score too large for an int would rank first.
+    private static int parseScore(String value) {
+        try {
+            return Integer.parseInt(value);
+        } catch (NumberFormatException e) {
+            return Integer.MAX_VALUE;
+        }
+    }
+
+    // Served from the cache, only pages past its end go to the disk.
+    private Cursor queryLeaderboard(int offset, int limit) {
+        MatrixCursor result = new MatrixCursor(LEADERBOARD_COLUMNS, Math.min(limit, leaderboard.getCapacity()));
+        loadLeaderboard();
+        if (leaderboard.fill(offset, limit, result))
+            return result;
+        try (Cursor rows = getDatabase().rawQuery("SELECT " + _ID + ", " + TIME + ", " + VALUE +
+                        " FROM " + TABLE_NAME + " ORDER BY " + VALUE + " DESC, " + _ID + " LIMIT ? OFFSET ?",
+                new String[]{Integer.toString(limit), Integer.toString(offset)})) {
+            // The first row may tie with the ones before the page, the others rank by position unless tied.
+            int rank = 0;
+            int previous = 0;
+            for (int position = offset; rows.moveToNext(); position++) {
+                int value = rows.getInt(2);
+                if (position == offset)
+                    rank = rank(value);
+                else if (value != previous)
+                    rank = position + 1;
+                previous = value;
+                result.addRow(new Object[]{rows.getLong(0), rows.getLong(1), value, rank});
+            }
+        }
+        return result;
+    }
+
+    private int rank(int value) {
+        loadLeaderboard();
+        int result = leaderboard.rank(value);
+        if (result != -1)
+            return result;
+        SQLiteStatement statement = getRankStatement();
+        synchronized (statement) {
+            statement.bindLong(1, value);
+            return (int) statement.simpleQueryForLong() + 1;
+        }
+    }
+
+    // Runs under the cache lock, an insert meanwhile is added once the load is done.
+    private void loadLeaderboard() {
+        synchronized (leaderboard) {
+            if (leaderboard.isLoaded())
+                return;
+            try (Cursor rows = getDatabase().query(TABLE_NAME, new String[]{_ID, TIME, VALUE}, null, null,
+                    null, null, VALUE + " DESC, " + _ID, Integer.toString(leaderboard.getCapacity()))) {
+                leaderboard.load(rows);
+            }
+        }
     }
 
     @Override
@@ -59,13 +282,19 @@ public class HighScoreStorage extends ContentProvider {
         String TABLE_NAME = "high_scores";
         String TIME = "Time";
         String VALUE = "Value";
+        // Leaderboard only: place among all scores, starting from 1.
+        String RANK = "Rank";
     }
 
     private class DBHelper extends SQLiteOpenHelper {
         static final String filename = "highscore.db";
+        // 2: index on Value, the scores are always listed best first.
+        static final int VERSION = 2;
 
         public DBHelper(Context context) {
-            super(context, filename, null, 1);
+            super(context, filename, null, VERSION);
+            // Readers do not wait for the insert at the end of a game.
+            setWriteAheadLoggingEnabled(true);
         }
 
         @Override
@@ -74,12 +303,19 @@ public class HighScoreStorage extends ContentProvider {
                     _ID + " INTEGER PRIMARY KEY AUTOINCREMENT, " +
                     TIME + " INTEGER, " +
                     VALUE + " INTEGER NOT NULL);");
+            createValueIndex(db);
+        }
+
+        private void createValueIndex(SQLiteDatabase db) {
+            db.execSQL("CREATE INDEX IF NOT EXISTS " + TABLE_NAME + "_" + VALUE +
+                    " ON " + TABLE_NAME + "(" + VALUE + ");");
         }
 
+        // Scores are kept, each version only adds to the schema.
         @Override
         public void onUpgrade(SQLiteDatabase db, int oldVersion, int newVersion) {
-            db.execSQL("DROP TABLE IF EXISTS " + TABLE_NAME);
-            onCreate(db);
+            if (oldVersion < 2)
+                createValueIndex(db);
         }
     }
 }
@@ -0,0 +1,98 @@
+package net.dimatomp.tetris;
+
+import android.database.Cursor;
+import android.database.MatrixCursor;
+
+// The best scores in memory, best first and earlier first among equal ones, so that the leaderboard
+// is listed without going to the disk. Empty until loaded, inserts after that are added in place.
+class LeaderboardCache {
+    private final long[] ids;
+    private final long[] times;
+    private final int[] values;
+    private int size;
+    private boolean loaded;
+    // Whether these are all the scores there are, otherwise the rows past the end are on disk only.
+    private boolean complete;
+
+    LeaderboardCache(int capacity) {
+        ids = new long[capacity];
+        times = new long[capacity];
+        values = new int[capacity];
+    }
+
+    int getCapacity() {
+        return ids.length;
+    }
+
+    synchronized boolean isLoaded() {
+        return loaded;
+    }
+
+    // Takes columns _id, Time and Value, best first, limited to the capacity.
+    synchronized void load(Cursor cursor) {
+        size = 0;
+        while (size < ids.length && cursor.moveToNext()) {
+            ids[size] = cursor.getLong(0);
+            times[size] = cursor.getLong(1);
+            values[size] = cursor.getInt(2);
+            size++;
+        }
+        complete = size < ids.length;
+        loaded = true;
+    }
+
+    synchronized void add(long id, long time, int value) {
+        if (!loaded)
+            return;
+        // Already read by a load that ran after the insert.
+        for (int i = 0; i < size; i++)
+            if (ids[i] == id)
+                return;
+        int position = size;
+        while (position > 0 && values[position - 1] < value)
+            position--;
+        if (position == ids.length) {
+            complete = false;
+            return;
+        }
+        if (size == ids.length) {
+            size--;
+            complete = false;
+        }
+        System.arraycopy(ids, position, ids, position + 1, size - position);
+        System.arraycopy(times, position, times, position + 1, size - position);
+        System.arraycopy(values, position, values, position + 1, size - position);
+        ids[position] = id;
+        times[position] = time;
+        values[position] = value;
+        size++;
+    }
+
+    // Adds rows offset to offset + limit with their ranks, false when some of them are not held here.
+    // Equal scores share a rank, the one rank() gives for them.
+    synchronized boolean fill(int offset, int limit, MatrixCursor result) {
+        if (!complete && offset + limit > size)
+            return false;
+        int first = Math.min(offset, size);
+        while (first > 0 && first < size && values[first - 1] == values[first])
+            first--;
+        int rank = first + 1;
+        for (int i = first; i < Math.min(size, offset + limit); i++) {
+            if (values[i] != values[first]) {
+                first = i;
+                rank = i + 1;
+            }
+            if (i >= offset)
+                result.addRow(new Object[]{ids[i], times[i], values[i], rank});
+        }
+        return true;
+    }
+
+    // One more than the number of better scores, -1 when some of those may not be held here.
+    synchronized int rank(int value) {
+        int better = 0;
+        while (better < size && values[better] > value)
+            better++;
+        return better == size && !complete ? -1 : better + 1;
+    }
+}
@@ -1,92 +1,163 @@
 package net.dimatomp.tetris;
 
 import android.app.Activity;
-import android.content.ContentValues;
-import android.graphics.Rect;
-import android.net.Uri;
 import android.os.Bundle;
+import android.view.MotionEvent;
 import android.view.View;
 import android.widget.TextView;
 import android.widget.Toast;
 
-import static net.dimatomp.tetris.HighScoreStorage.HighScoreColumns.TIME;
-import static net.dimatomp.tetris.HighScoreStorage.HighScoreColumns.VALUE;
+import net.dimatomp.tetris.metrics.Metrics;
+import net.dimatomp.tetris.stats.EventRecorder;
 
-public class MainActivity extends Activity implements TetrisModel.Callback {
-    private int points = 0;
+public class MainActivity extends Activity implements FrameDispatcher.Listener {
+    // Field size of a new game, e.g. a few thousand cells each way for stress and marathon runs.
+    public static final String EXTRA_FIELD_WIDTH = "net.dimatomp.tetris.FIELD_WIDTH";
+    public static final String EXTRA_FIELD_HEIGHT = "net.dimatomp.tetris.FIELD_HEIGHT";
+    private volatile int points = 0;
+    private boolean gameOver;
     private TetrisView tetrisView;
+    private SnapshotStore snapshots;
+    // The game starts once the saved game is read and the event log is open, and in the foreground only.
+    private int pendingLoads;
+    private boolean resumed;
+    private final Runnable loaded = new Runnable() {
+        @Override
+        public void run() {
+            if (--pendingLoads == 0 && resumed && !isDestroyed())
+                startGame();
+        }
+    };
+    private MetricsOverlay metricsOverlay;
+    private EventRecorder recorder;
+    private final Runnable showScore = new Runnable() {
+        @Override
+        public void run() {
+            ((TextView) findViewById(R.id.score)).setText(Integer.toString(points));
+        }
+    };
+    private final Runnable showGameOver = new Runnable() {
+        @Override
+        public void run() {
+            tetrisView.stopPlaying();
+            gameOver = true;
+            snapshots.delete();
+            snapshots.saveReplay(tetrisView.getSession().record());
+            if (points > 0)
+                ScoreWriter.get(MainActivity.this).submit(System.currentTimeMillis(), points);
+            Toast.makeText(MainActivity.this, "Game Over", Toast.LENGTH_SHORT).show();
+            finish();
+        }
+    };
 
     @Override
     protected void onCreate(Bundle savedInstanceState) {
         super.onCreate(savedInstanceState);
         setContentView(R.layout.activity_main);
         tetrisView = (TetrisView) findViewById(R.id.field);
-        if (savedInstanceState != null && savedInstanceState.containsKey("points")) {
-            points = savedInstanceState.getInt("points");
-            ((TextView) findViewById(R.id.score)).setText(Integer.toString(points));
+        tetrisView.setFieldSize(getIntent().getIntExtra(EXTRA_FIELD_WIDTH, TetrisView.FIELD_SIDE),
+                getIntent().getIntExtra(EXTRA_FIELD_HEIGHT, TetrisView.FIELD_SIDE));
+        snapshots = new SnapshotStore(this);
+        Metrics.setTracer(new AndroidTracer());
+        Metrics.setModelTiming(true);
+        bindButton(R.id.leftButton, GameSession.MOVE_LEFT);
+        bindButton(R.id.right_button, GameSession.MOVE_RIGHT);
+        bindButton(R.id.turn_button, GameSession.TURN_RIGHT);
+        bindButton(R.id.putDown, GameSession.SPEED_UP);
+        bindButton(R.id.dropButton, GameSession.HARD_DROP);
+        // Long clicking the score shows the metrics.
+        metricsOverlay = new MetricsOverlay((TextView) findViewById(R.id.metrics));
+        findViewById(R.id.score).setOnLongClickListener(new View.OnLongClickListener() {
+            @Override
+            public boolean onLongClick(View v) {
+                metricsOverlay.toggle();
+                return true;
+            }
+        });
+        pendingLoads++;
+        Analytics.get(this).whenOpen(new Runnable() {
+            @Override
+            public void run() {
+                runOnUiThread(loaded);
+            }
+        });
+        // After a configuration change the view restores its own model.
+        if (savedInstanceState == null) {
+            pendingLoads++;
+            snapshots.load(new SnapshotStore.LoadCallback() {
+                @Override
+                public void onLoaded(final TetrisModel saved) {
+                    runOnUiThread(new Runnable() {
+                        @Override
+                        public void run() {
+                            if (saved != null && !isDestroyed())
+                                tetrisView.setModel(saved);
+                            loaded.run();
+                        }
+                    });
+                }
+            });
         }
     }
 
     @Override
     protected void onResume() {
-        super.onStart();
-        tetrisView.startPlaying();
-        tetrisView.getModel().registerCallback(this);
+        super.onResume();
+        Analytics.get(this).resume();
+        resumed = true;
+        if (pendingLoads == 0)
+            startGame();
     }
 
     @Override
     protected void onPause() {
-        tetrisView.stopPlaying();
+        resumed = false;
+        metricsOverlay.hide();
+        if (pendingLoads == 0) {
+            tetrisView.stopPlaying();
+            if (!gameOver)
+                snapshots.save(tetrisView.getModel());
+        }
+        Analytics.get(this).pause();
         super.onPause();
     }
 
-    @Override
-    public void onLinesRemoved(int... pos) {
-        points += pos.length;
-        runOnUiThread(new Runnable() {
-            @Override
-            public void run() {
-                ((TextView) findViewById(R.id.score)).setText(Integer.toString(points));
-            }
-        });
-    }
-
-    public void speedUp(View button) {
-        tetrisView.speedUp();
-    }
-
-    @Override
-    protected void onSaveInstanceState(Bundle outState) {
-        super.onSaveInstanceState(outState);
-        outState.putInt("points", points);
+    private void startGame() {
+        GameSession session = tetrisView.prepareSession();
+        if (recorder == null || recorder.getSession() != session)
+            recorder = Analytics.get(this).newRecorder(session);
+        tetrisView.startPlaying(this, recorder);
+        points = tetrisView.getModel().getScore();
+        showScore.run();
     }
 
+    // Arrives on the game thread, once per frame with any changes.
     @Override
-    public void onGameOver() {
-        tetrisView.stopPlaying();
-        if (points > 0) {
-            ContentValues values = new ContentValues(2);
-            values.put(TIME, System.currentTimeMillis());
-            values.put(VALUE, points);
-            getContentResolver().insert(Uri.parse("content://net.dimatomp.tetris/highscore"), values);
+    public void onChanges(ChangeSet changes) {
+        if (changes.getRemovedLineCount() != 0) {
+            points = changes.getScore();
+            runOnUiThread(showScore);
         }
-        Toast.makeText(MainActivity.this, "Game Over", Toast.LENGTH_SHORT).show();
-        finish();
-    }
-
-    @Override
-    public void onFigureMoved(Rect oldArea) {
-    }
-
-    public void moveLeft(View button) {
-        tetrisView.getModel().moveX(-1);
-    }
-
-    public void moveRight(View button) {
-        tetrisView.getModel().moveX(1);
+        if (changes.isGameOver())
+            runOnUiThread(showGameOver);
     }
 
-    public void turnRight(View button) {
-        tetrisView.getModel().turnClockwise(-1);
+    // Buttons report presses and releases, the button itself still shows its pressed state.
+    private void bindButton(int id, final int command) {
+        findViewById(id).setOnTouchListener(new View.OnTouchListener() {
+            @Override
+            public boolean onTouch(View v, MotionEvent event) {
+                switch (event.getActionMasked()) {
+                    case MotionEvent.ACTION_DOWN:
+                        tetrisView.press(command);
+                        break;
+                    case MotionEvent.ACTION_UP:
+                    case MotionEvent.ACTION_CANCEL:
+                        tetrisView.release(command);
+                        break;
+                }
+                return false;
+            }
+        });
     }
 }
@@ -19,21 +19,66 @@ import android.widget.ListView;
 import android.widget.SimpleCursorAdapter;
 import android.widget.TextView;
 
+import net.dimatomp.tetris.stats.StatsAggregator;
+import net.dimatomp.tetris.stats.StatsSummary;
+
 import java.util.Date;
 
 import static net.dimatomp.tetris.HighScoreStorage.HighScoreColumns.TIME;
 import static net.dimatomp.tetris.HighScoreStorage.HighScoreColumns.VALUE;
 
 public class MainMenu extends ListActivity {
+    private TextView statsView;
+    private final Runnable showStats = new Runnable() {
+        @Override
+        public void run() {
+            StatsAggregator aggregator = Analytics.get(MainMenu.this).getAggregator();
+            StatsSummary recent = aggregator == null ? StatsSummary.EMPTY : aggregator.getRecent();
+            if (recent.getGames() == 0) {
+                statsView.setText(R.string.stats_empty);
+                return;
+            }
+            statsView.setText(getString(R.string.stats_summary, recent.getGames(), recent.getAverageScore(),
+                    recent.getAveragePieces(), recent.getActionsPerMinute(), recent.getMillisPerPiece() / 1000,
+                    recent.getClears(1), recent.getClears(2), recent.getClears(3), recent.getClears(4)));
+        }
+    };
+
     @Override
     protected void onCreate(Bundle savedInstanceState) {
         super.onCreate(savedInstanceState);
         setContentView(R.layout.activity_main_menu);
+        StartupTimer.measure("menu", getListView());
 
+        // A footer keeps the positions of the menu items.
+        statsView = new TextView(this);
+        statsView.setTextAppearance(this, android.R.style.TextAppearance_Small);
+        getListView().addFooterView(statsView, null, false);
         setListAdapter(new ArrayAdapter<>(this, android.R.layout.simple_list_item_1,
                 getResources().getStringArray(R.array.main_menu)));
     }
 
+    // The saved summaries show at once, the events of the game just played follow.
+    @Override
+    protected void onResume() {
+        super.onResume();
+        showStats.run();
+        Analytics analytics = Analytics.get(this);
+        analytics.resume();
+        analytics.refresh(new Runnable() {
+            @Override
+            public void run() {
+                runOnUiThread(showStats);
+            }
+        });
+    }
+
+    @Override
+    protected void onPause() {
+        Analytics.get(this).pause();
+        super.onPause();
+    }
+
     @Override
     protected void onListItemClick(ListView l, View v, int position, long id) {
         switch (position) {
@@ -51,8 +96,9 @@ public class MainMenu extends ListActivity {
 
         @Override
         public Loader<Cursor> onCreateLoader(int id, Bundle args) {
-            return new CursorLoader(getActivity(), Uri.parse("content://net.dimatomp.tetris/highscore"),
-                    null, null, null, VALUE + " DESC");
+            Uri top = HighScoreStorage.LEADERBOARD_URI.buildUpon()
+                    .appendQueryParameter(HighScoreStorage.PARAM_LIMIT, "50").build();
+            return new CursorLoader(getActivity(), top, null, null, null, null);
         }
 
         @Override
@@ -0,0 +1,66 @@
+package net.dimatomp.tetris;
+
+import android.util.Log;
+import android.view.View;
+import android.widget.TextView;
+import android.widget.Toast;
+
+import net.dimatomp.tetris.metrics.Metrics;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.Writer;
+
+// Latencies over the field, refreshed twice a second while shown. A long click dumps all metrics to a file.
+class MetricsOverlay implements View.OnLongClickListener {
+    private static final String TAG = "MetricsOverlay";
+    private static final long REFRESH_MILLIS = 500;
+
+    private final TextView view;
+    private boolean shown;
+    private final Runnable refresh = new Runnable() {
+        @Override
+        public void run() {
+            view.setText(Metrics.summary());
+            view.postDelayed(this, REFRESH_MILLIS);
+        }
+    };
+
+    MetricsOverlay(TextView view) {
+        this.view = view;
+        view.setOnLongClickListener(this);
+    }
+
+    void toggle() {
+        shown = !shown;
+        view.setVisibility(shown ? View.VISIBLE : View.GONE);
+        if (shown)
+            refresh.run();
+        else
+            view.removeCallbacks(refresh);
+    }
+
+    void hide() {
+        if (shown)
+            toggle();
+    }
+
+    @Override
+    public boolean onLongClick(View v) {
+        final File file = new File(view.getContext().getExternalFilesDir(null),
+                "metrics-" + System.currentTimeMillis() + ".tsv");
+        new Thread(new Runnable() {
+            @Override
+            public void run() {
+                try (Writer out = new FileWriter(file)) {
+                    Metrics.dump(out);
+                } catch (IOException e) {
+                    Log.w(TAG, "Could not dump the metrics", e);
+                }
+            }
+        }, "metrics-dump").start();
+        Toast.makeText(view.getContext(), file.getPath(), Toast.LENGTH_SHORT).show();
+        return true;
+    }
+}
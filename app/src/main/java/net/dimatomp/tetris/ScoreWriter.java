@@ -0,0 +1,83 @@
+package net.dimatomp.tetris;
+
+import android.content.ContentValues;
+import android.content.Context;
+import android.util.Log;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import static net.dimatomp.tetris.HighScoreStorage.HighScoreColumns.TIME;
+import static net.dimatomp.tetris.HighScoreStorage.HighScoreColumns.VALUE;
+
+// Stores finished games off the calling thread. Scores that pile up while a write is running
+// go to the database together in the next bulkInsert, which is one transaction.
+class ScoreWriter {
+    private static final String TAG = "ScoreWriter";
+    private static final long SHUTDOWN_TIMEOUT_SECONDS = 2;
+    private static ScoreWriter instance;
+
+    private final Context context;
+    private final ExecutorService executor = Executors.newSingleThreadExecutor();
+    // Guarded by itself, a flush is queued whenever it stops being empty.
+    private final List<ContentValues> pending = new ArrayList<>();
+    private final Runnable flush = new Runnable() {
+        @Override
+        public void run() {
+            flush();
+        }
+    };
+
+    private ScoreWriter(Context context) {
+        this.context = context;
+        // Usually the process is killed without one, but a clean exit writes what is left.
+        Runtime.getRuntime().addShutdownHook(new Thread("score-writer-shutdown") {
+            @Override
+            public void run() {
+                executor.shutdown();
+                try {
+                    executor.awaitTermination(SHUTDOWN_TIMEOUT_SECONDS, TimeUnit.SECONDS);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                flush();
+            }
+        });
+    }
+
+    static synchronized ScoreWriter get(Context context) {
+        if (instance == null)
+            instance = new ScoreWriter(context.getApplicationContext());
+        return instance;
+    }
+
+    void submit(long time, int value) {
+        ContentValues values = new ContentValues(2);
+        values.put(TIME, time);
+        values.put(VALUE, value);
+        synchronized (pending) {
+            pending.add(values);
+            if (pending.size() > 1 || executor.isShutdown())
+                return;
+        }
+        executor.execute(flush);
+    }
+
+    private void flush() {
+        ContentValues[] batch;
+        synchronized (pending) {
+            batch = pending.toArray(new ContentValues[pending.size()]);
+            pending.clear();
+        }
+        if (batch.length == 0)
+            return;
+        try {
+            context.getContentResolver().bulkInsert(HighScoreStorage.HIGH_SCORE_URI, batch);
+        } catch (RuntimeException e) {
+            Log.w(TAG, "Could not store " + batch.length + " scores", e);
+        }
+    }
+}
@@ -0,0 +1,117 @@
+package net.dimatomp.tetris;
+
+import android.content.Context;
+import android.util.Log;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+
+// The unfinished game on disk, so that it survives the process being killed in the background.
+class SnapshotStore {
+    private static final String TAG = "SnapshotStore";
+    private static final String FILE_NAME = "snapshot.bin";
+    private static final String REPLAY_NAME = "last_game.replay";
+    // Saves and deletions run one after another, the last request wins.
+    private static final Executor writer = Executors.newSingleThreadExecutor();
+    private final File file;
+    private final File replayFile;
+
+    SnapshotStore(Context context) {
+        file = new File(context.getFilesDir(), FILE_NAME);
+        replayFile = new File(context.getFilesDir(), REPLAY_NAME);
+    }
+
+    // Fields may be thousands of cells each way, so files are only touched on the writer thread.
+    interface LoadCallback {
+        // On the writer thread, null without a saved game or with one that does not decode.
+        void onLoaded(TetrisModel model);
+    }
+
+    // Copies the model on the calling thread, the model must not change meanwhile; it is encoded and
+    // written in the background.
+    void save(TetrisModel model) {
+        final TetrisModel copy = model.copy();
+        writer.execute(new Runnable() {
+            @Override
+            public void run() {
+                writeNow(file, StateCodec.encode(copy));
+            }
+        });
+    }
+
+    // The input log of the game that just ended, to be attached to bug reports and played by ReplayEngine.
+    void saveReplay(byte[] log) {
+        write(replayFile, log);
+    }
+
+    private void write(final File target, final byte[] data) {
+        writer.execute(new Runnable() {
+            @Override
+            public void run() {
+                writeNow(target, data);
+            }
+        });
+    }
+
+    private static void writeNow(File target, byte[] data) {
+        File tempFile = new File(target.getPath() + ".tmp");
+        try (FileOutputStream out = new FileOutputStream(tempFile)) {
+            out.write(data);
+            out.getFD().sync();
+        } catch (IOException e) {
+            Log.w(TAG, "Could not write " + target.getName(), e);
+            return;
+        }
+        if (!tempFile.renameTo(target))
+            Log.w(TAG, "Could not replace " + target.getName());
+    }
+
+    void delete() {
+        writer.execute(new Runnable() {
+            @Override
+            public void run() {
+                if (file.exists() && !file.delete())
+                    Log.w(TAG, "Could not delete the saved game");
+            }
+        });
+    }
+
+    // After the saves and deletions requested before it.
+    void load(final LoadCallback done) {
+        writer.execute(new Runnable() {
+            @Override
+            public void run() {
+                done.onLoaded(loadNow());
+            }
+        });
+    }
+
+    private TetrisModel loadNow() {
+        if (!file.exists())
+            return null;
+        try (FileInputStream in = new FileInputStream(file)) {
+            byte[] data = new byte[(int) file.length()];
+            int read = 0;
+            while (read < data.length) {
+                int count = in.read(data, read, data.length - read);
+                if (count < 0)
+                    break;
+                read += count;
+            }
+            return StateCodec.decode(data);
+        } catch (IOException e) {
+            Log.w(TAG, "Could not restore the saved game", e);
+            return null;
+        } catch (RuntimeException e) {
+            // Corrupt, it would fail the same way on every launch.
+            Log.w(TAG, "Dropping a saved game that does not decode", e);
+            if (!file.delete())
+                Log.w(TAG, "Could not delete the saved game");
+            return null;
+        }
+    }
+}
@@ -0,0 +1,90 @@
+package net.dimatomp.tetris;
+
+import android.os.SystemClock;
+import android.util.Log;
+import android.view.View;
+import android.view.ViewTreeObserver;
+
+import net.dimatomp.tetris.metrics.LatencyHistogram;
+import net.dimatomp.tetris.metrics.Metrics;
+
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+// Time to the first frame of an activity. The first activity of a process counts from the start
+// of the process, into startup.cold.<name>; later ones from their onCreate(), into startup.warm.<name>.
+final class StartupTimer {
+    private static final String TAG = "StartupTimer";
+    // Kernel clock ticks per second, which /proc reports the start time in. 100 on every Android device.
+    private static final long CLOCK_TICKS_PER_SECOND = 100;
+    // Class loading happens in the first onCreate(), the fallback when /proc can not be read.
+    private static final long loadedNanos = System.nanoTime();
+    private static boolean coldStartTaken;
+
+    private final LatencyHistogram histogram;
+    private final long startNanos;
+    private final boolean cold;
+
+    private StartupTimer(String name, long startNanos, boolean cold) {
+        this.histogram = Metrics.histogram((cold ? "startup.cold." : "startup.warm.") + name);
+        this.startNanos = startNanos;
+        this.cold = cold;
+    }
+
+    // Main thread, from onCreate(): records when the view first draws.
+    static void measure(String name, View view) {
+        boolean cold = !coldStartTaken;
+        coldStartTaken = true;
+        StartupTimer timer = new StartupTimer(name, cold ? processStartNanos() : System.nanoTime(), cold);
+        timer.onFirstDraw(view);
+    }
+
+    // Main thread, for surfaces, which draw without the view tree: stop() the timer from the thread
+    // that posts the first frame.
+    static StartupTimer begin(String name) {
+        boolean cold = !coldStartTaken;
+        coldStartTaken = true;
+        return new StartupTimer(name, cold ? processStartNanos() : System.nanoTime(), cold);
+    }
+
+    void stop() {
+        long elapsed = System.nanoTime() - startNanos;
+        histogram.record(elapsed);
+        if (cold)
+            Log.i(TAG, histogram.getName() + " " + elapsed / 1000000 + " ms");
+    }
+
+    private void onFirstDraw(final View view) {
+        view.getViewTreeObserver().addOnPreDrawListener(new ViewTreeObserver.OnPreDrawListener() {
+            @Override
+            public boolean onPreDraw() {
+                view.getViewTreeObserver().removeOnPreDrawListener(this);
+                stop();
+                return true;
+            }
+        });
+    }
+
+    // From field 22 of /proc/self/stat, in clock ticks since boot like elapsedRealtime().
+    private static long processStartNanos() {
+        long offset = System.nanoTime() - SystemClock.elapsedRealtimeNanos();
+        try (InputStream in = new FileInputStream("/proc/self/stat")) {
+            byte[] buffer = new byte[512];
+            int length = 0;
+            for (int read; length < buffer.length && (read = in.read(buffer, length, buffer.length - length)) > 0; )
+                length += read;
+            String stat = new String(buffer, 0, length, "US-ASCII");
+            // The command name in parentheses may hold spaces, fields are counted after it.
+            String[] fields = stat.substring(stat.lastIndexOf(')') + 2).split(" ");
+            long ticks = Long.parseLong(fields[19]);
+            long result = ticks * (1000000000L / CLOCK_TICKS_PER_SECOND) + offset;
+            // A start after our own class loading, or long before it, means the clocks do not match.
+            if (result <= loadedNanos && loadedNanos - result < 60000000000L)
+                return result;
+        } catch (IOException | RuntimeException e) {
+            Log.w(TAG, "Could not read the process start time", e);
+        }
+        return loadedNanos;
+    }
+}
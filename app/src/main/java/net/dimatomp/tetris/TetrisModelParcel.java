@@ -0,0 +1,38 @@
+package net.dimatomp.tetris;
+
+import android.os.Parcel;
+import android.os.Parcelable;
+
+// TetrisModel lives in the plain Java core module, this carries it through Bundles.
+public class TetrisModelParcel implements Parcelable {
+    public static final Creator<TetrisModelParcel> CREATOR = new Creator<TetrisModelParcel>() {
+        @Override
+        public TetrisModelParcel createFromParcel(Parcel source) {
+            return new TetrisModelParcel(StateCodec.decode(source.createByteArray()));
+        }
+
+        @Override
+        public TetrisModelParcel[] newArray(int size) {
+            return new TetrisModelParcel[size];
+        }
+    };
+    private final TetrisModel model;
+
+    public TetrisModelParcel(TetrisModel model) {
+        this.model = model;
+    }
+
+    public TetrisModel getModel() {
+        return model;
+    }
+
+    @Override
+    public int describeContents() {
+        return 0;
+    }
+
+    @Override
+    public void writeToParcel(Parcel dest, int flags) {
+        dest.writeByteArray(StateCodec.encode(model));
+    }
+}
@@ -1,8 +1,8 @@
 package net.dimatomp.tetris;
 
 import android.content.Context;
+import android.graphics.Bitmap;
 import android.graphics.Canvas;
-import android.graphics.Paint;
 import android.graphics.Rect;
 import android.graphics.drawable.Drawable;
 import android.os.Bundle;
@@ -11,158 +11,296 @@ import android.util.AttributeSet;
 import android.view.SurfaceHolder;
 import android.view.SurfaceView;
 
-import java.util.Random;
+import net.dimatomp.tetris.metrics.Counter;
+import net.dimatomp.tetris.metrics.LatencyHistogram;
+import net.dimatomp.tetris.metrics.Metrics;
+import net.dimatomp.tetris.render.FieldRenderer;
 
-public class TetrisView extends SurfaceView implements TetrisModel.Callback {
-    public static final int FIELD_SIDE = 24;
-    private static final Random rng = new Random();
+// The model is only touched on the game thread while playing, input is queued for it.
+public class TetrisView extends SurfaceView implements FrameDispatcher.Listener, SurfaceHolder.Callback {
+    public static final int FIELD_SIDE = FieldRenderer.VIEW_SIDE;
+    private static final LatencyHistogram refreshTime = Metrics.histogram("view.refresh");
+    private static final LatencyHistogram lockTime = Metrics.histogram("view.refresh.lockCanvas");
+    private static final LatencyHistogram drawTime = Metrics.histogram("view.refresh.draw");
+    private static final LatencyHistogram postTime = Metrics.histogram("view.refresh.post");
+    private static final Counter lockFailures = Metrics.counter("view.refresh.lockFailed");
+    private static final Counter droppedInput = Metrics.counter("input.dropped");
+    // From the press to the post of the first frame drawn after the command was applied.
+    private static final LatencyHistogram inputLatency = Metrics.histogram("input.latency");
+    private static final long NANOS_PER_MILLI = 1000000L;
+    // Flags the release of a command in the input queue.
+    private static final int RELEASED = 0x100;
     private TetrisModel model;
-    private long interval;
+    private int fieldWidth = FIELD_SIDE;
+    private int fieldHeight = FIELD_SIDE;
+    // Kept across pauses of the same model, so that its input log covers the whole game.
+    private GameSession session;
+    // While playing: merges the model events of a frame, and what startPlaying() registered on the model.
+    private FrameDispatcher dispatcher;
+    private TetrisModel.Callback[] callbacks = new TetrisModel.Callback[0];
+    // UI thread state.
+    private boolean playing;
+    private boolean surfaceReady;
+    // Presses and releases from the UI thread, applied before the first tick after them.
+    private final InputQueue inputQueue = new InputQueue(64);
+    // Game thread state: held moves repeat, by default after 170 ms every 50 ms.
+    private final AutoRepeat autoRepeat = new AutoRepeat(170 * NANOS_PER_MILLI, 50 * NANOS_PER_MILLI);
+    // Press times of the commands not drawn yet, the ones past the capacity are not measured.
+    private final long[] pendingInput = new long[16];
+    private int pendingInputCount;
+    // Game thread: what to draw, larger boards are shown through a viewport that follows the figure.
+    private final FieldRenderer renderer = new FieldRenderer();
+    private CanvasTarget layerTarget;
+    private CanvasTarget frameTarget;
+    // Reused by refresh(), which runs for every move of the figure.
+    private final Rect frameRect = new Rect();
+    private final Area frameArea = new Area();
+    // Looked up once, by the game thread with the first sprites so that inflating the view does not decode them.
+    private Drawable blockDrawable;
+    private Drawable figureDrawable;
+    // Game thread: the settled blocks and the border, drawn at the view size.
+    private volatile boolean layersStale = true;
+    private Bitmap boardLayer;
+    private final Canvas layerCanvas = new Canvas();
+    private Bitmap blockSprite;
+    private Bitmap figureSprite;
+    // Until the first frame is posted, by the game thread.
+    private StartupTimer startupTimer;
 
-    private Runnable moveDown = new Runnable() {
+    private final GameLoop gameLoop = new GameLoop(new GameLoop.Game() {
         @Override
-        public void run() {
-            if (interval > 0) {
-                if (!model.moveY(1)) {
-                    interval = 500;
-                    int fType = rng.nextInt(TetrisModel.getFiguresCount());
-                    int dir = rng.nextInt(TetrisModel.getPosCount(fType));
-                    model.throwFigure(fType, dir);
+        public long getStepNanos() {
+            return GameSession.TICK_NANOS;
+        }
+
+        @Override
+        public void input(long nanos) {
+            while (!inputQueue.isEmpty() && inputQueue.peekNanos() - nanos <= 0) {
+                int event = inputQueue.peekEvent();
+                long time = inputQueue.peekNanos();
+                inputQueue.remove();
+                if ((event & RELEASED) != 0) {
+                    autoRepeat.release(event & ~RELEASED);
+                    continue;
                 }
-                if (interval > 0)
-                    postDelayed(this, interval);
+                session.input(event);
+                if (pendingInputCount < pendingInput.length)
+                    pendingInput[pendingInputCount++] = time;
+                if (event == GameSession.MOVE_LEFT || event == GameSession.MOVE_RIGHT)
+                    autoRepeat.press(event, time);
             }
+            for (int i = autoRepeat.due(nanos); i > 0; i--)
+                session.input(autoRepeat.getHeld());
+        }
+
+        @Override
+        public void step() {
+            session.tick();
+        }
+
+        @Override
+        public void render() {
+            dispatcher.dispatch();
+            refresh();
+            long now = System.nanoTime();
+            for (int i = 0; i < pendingInputCount; i++)
+                inputLatency.record(now - pendingInput[i]);
+            pendingInputCount = 0;
+        }
+    });
+
+    private final Runnable redraw = new Runnable() {
+        @Override
+        public void run() {
+            renderer.invalidate();
         }
     };
 
     public TetrisView(Context context) {
         super(context);
+        init();
     }
 
     public TetrisView(Context context, AttributeSet attrs) {
         super(context, attrs);
+        init();
     }
 
     public TetrisView(Context context, AttributeSet attrs, int defStyleAttr) {
         super(context, attrs, defStyleAttr);
+        init();
     }
 
-    @Override
-    public void onGameOver() {
+    private void init() {
+        startupTimer = StartupTimer.begin("game");
+        getHolder().addCallback(this);
+        float strokeSize = getResources().getDimension(R.dimen.stroke_size);
+        renderer.setStrokeSize(strokeSize);
+        int blankColor = getResources().getColor(android.R.color.black);
+        int borderColor = getResources().getColor(android.R.color.white);
+        layerTarget = new CanvasTarget(blankColor, borderColor, strokeSize);
+        frameTarget = new CanvasTarget(blankColor, borderColor, strokeSize);
+        layerTarget.setCanvas(layerCanvas);
     }
 
-    public void stopPlaying() {
-        interval = 0;
+    @Override
+    public void onChanges(ChangeSet changes) {
+        if (changes.isGameOver())
+            gameLoop.halt();
     }
 
-    @Override
-    public void onLinesRemoved(int... pos) {
-        int maxPos = Integer.MIN_VALUE;
-        for (int p : pos)
-            maxPos = Math.max(maxPos, p);
-        final int fMaxPos = maxPos;
-        refresh(new Rect(0, 0, model.getWidth(), fMaxPos + 1));
+    // Unregisters everything startPlaying() registered, so that the model does not keep the listeners.
+    public void stopPlaying() {
+        playing = false;
+        gameLoop.stop();
+        if (dispatcher != null) {
+            TetrisModel played = dispatcher.getModel();
+            played.unregisterCallback(dispatcher);
+            for (TetrisModel.Callback callback : callbacks)
+                played.unregisterCallback(callback);
+            dispatcher = null;
+            callbacks = new TetrisModel.Callback[0];
+        }
     }
 
     public TetrisModel getModel() {
         return model;
     }
 
-    @Override
-    public void onFigureMoved(Rect oldArea) {
-        refresh(oldArea);
+    // Only while not playing, e.g. to continue a saved game.
+    public void setModel(TetrisModel model) {
+        this.model = model;
     }
 
-    public void speedUp() {
-        if (interval != 0)
-            interval = 50;
+    // Only while not playing, the size of the next new game.
+    public void setFieldSize(int width, int height) {
+        if (width < TetrisModel.MIN_WIDTH || height < TetrisModel.MIN_HEIGHT)
+            throw new IllegalArgumentException("Field " + width + "x" + height + " is smaller than "
+                    + TetrisModel.MIN_WIDTH + "x" + TetrisModel.MIN_HEIGHT);
+        fieldWidth = width;
+        fieldHeight = height;
     }
 
-    public void startPlaying() {
-        if (interval == 0) {
-            if (model == null) {
-                model = new TetrisModel(FIELD_SIDE, FIELD_SIDE);
-                int fType = rng.nextInt(TetrisModel.getFiguresCount());
-                int dir = rng.nextInt(TetrisModel.getPosCount(fType));
-                model.placeNewFigure(fType, dir);
-            }
-            refresh(null);
-            model.registerCallback(this);
-            interval = 500;
-            postDelayed(moveDown, interval);
-        }
+    // Only while not playing, null before the first game started.
+    public GameSession getSession() {
+        return session;
     }
 
-    private int getHorOffset() {
-        return Math.max(0, (getWidth() - getHeight()) / 2);
+    // UI thread: a GameSession command, given right away and repeated while held for the moves.
+    public void press(int command) {
+        if (playing && !inputQueue.offer(command, System.nanoTime()))
+            droppedInput.increment();
     }
 
-    private int getVerOffset() {
-        return Math.max(0, (getHeight() - getWidth()) / 2);
+    public void release(int command) {
+        if (playing && !inputQueue.offer(command | RELEASED, System.nanoTime()))
+            droppedInput.increment();
     }
 
-    private int getXPos(int x) {
-        return getHorOffset() + Math.min(getWidth(), getHeight()) * x / model.getWidth();
+    // Only while not playing.
+    public void setAutoRepeat(long delayMillis, long periodMillis) {
+        autoRepeat.setTiming(delayMillis * NANOS_PER_MILLI, periodMillis * NANOS_PER_MILLI);
     }
 
-    private int getYPos(int y) {
-        return getVerOffset() + Math.min(getWidth(), getHeight()) * y / model.getHeight();
+    // Only while not playing: the session startPlaying() goes on with, a new game if there is none.
+    public GameSession prepareSession() {
+        if (model == null)
+            model = GameSession.newModel(fieldWidth, fieldHeight, System.nanoTime());
+        if (session == null || session.getModel() != model)
+            session = new GameSession(model);
+        return session;
     }
 
-    private Rect scaled(Rect dsc) {
-        return new Rect(getXPos(dsc.left), getYPos(dsc.top), getXPos(dsc.right), getYPos(dsc.bottom));
+    // The listener gets the changes of every drawn frame at once, the callbacks every single model event.
+    // All are registered before the game thread starts, so they see everything. Nulls are skipped.
+    public void startPlaying(FrameDispatcher.Listener listener, TetrisModel.Callback... callbacks) {
+        if (!playing) {
+            prepareSession();
+            dispatcher = new FrameDispatcher(model);
+            dispatcher.addListener(this);
+            if (listener != null)
+                dispatcher.addListener(listener);
+            model.registerCallback(dispatcher);
+            this.callbacks = callbacks.clone();
+            for (TetrisModel.Callback callback : callbacks)
+                if (callback != null)
+                    model.registerCallback(callback);
+            // The game thread is not running, nothing else touches these now.
+            inputQueue.clear();
+            autoRepeat.reset();
+            pendingInputCount = 0;
+            renderer.setModel(model);
+            playing = true;
+            startLoop();
+        }
     }
 
-    private void blankArea(Canvas canvas, Rect scaled) {
-        Paint rectPaint = new Paint();
-        rectPaint.setColor(getResources().getColor(android.R.color.black));
-        rectPaint.setStyle(Paint.Style.FILL);
-        canvas.drawRect(scaled, rectPaint);
+    private void startLoop() {
+        if (playing && surfaceReady && !gameLoop.isRunning()) {
+            gameLoop.start();
+            gameLoop.post(redraw);
+        }
     }
 
-    private void drawBorder(Canvas canvas) {
-        Paint rectPaint = new Paint();
-        rectPaint.setColor(getResources().getColor(android.R.color.white));
-        rectPaint.setStyle(Paint.Style.STROKE);
-        float overlap = getResources().getDimension(R.dimen.stroke_size);
-        rectPaint.setStrokeWidth(overlap);
-        canvas.drawRect(getXPos(0) - overlap, getYPos(0) - overlap,
-                getXPos(model.getWidth()) + overlap, getYPos(model.getHeight()) + overlap, rectPaint);
+    @Override
+    public void surfaceCreated(SurfaceHolder holder) {
+        surfaceReady = true;
+        startLoop();
     }
 
-    private void refreshField(Canvas canvas) {
-        Drawable block = getResources().getDrawable(R.drawable.block);
-        float overlap = getResources().getDimension(R.dimen.stroke_size) / 2;
-        for (int x = 0; x < model.getWidth(); x++)
-            for (int y = 0; y < model.getHeight(); y++) {
-                if (model.isOccupied(x, y)) {
-                    block.setBounds((int) (getXPos(x) - overlap), (int) (getYPos(y) - overlap),
-                            (int) (getXPos(x + 1) + overlap), (int) (getYPos(y + 1) + overlap));
-                    block.draw(canvas);
-                }
-            }
+    @Override
+    public void surfaceChanged(SurfaceHolder holder, int format, int width, int height) {
+        gameLoop.post(redraw);
     }
 
-    private void drawFigure(Canvas canvas) {
-        Drawable figure = getResources().getDrawable(R.drawable.figure);
-        float overlap = getResources().getDimension(R.dimen.stroke_size) / 2;
-        for (int x = Math.max(0, -model.getX()); x < model.getFigureWidth(); x++)
-            for (int y = Math.max(0, -model.getY()); y < model.getFigureHeight(); y++) {
-                if (model.isFigurePart(x, y)) {
-                    figure.setBounds((int) (getXPos(x + model.getX()) - overlap)
-                            , (int) (getYPos(y + model.getY()) - overlap)
-                            , (int) (getXPos(x + model.getX() + 1) + overlap)
-                            , (int) (getYPos(y + model.getY() + 1) + overlap));
-                    figure.draw(canvas);
-                }
-            }
+    @Override
+    public void surfaceDestroyed(SurfaceHolder holder) {
+        surfaceReady = false;
+        gameLoop.stop();
+    }
+
+    // Game thread: the board layer and the sprites follow the view size.
+    private void rebuildCaches() {
+        layersStale = false;
+        if (boardLayer != null)
+            boardLayer.recycle();
+        boardLayer = Bitmap.createBitmap(getWidth(), getHeight(), Bitmap.Config.RGB_565);
+        layerCanvas.setBitmap(boardLayer);
+        layerTarget.setLayer(boardLayer);
+        frameTarget.setLayer(boardLayer);
+        renderer.setSize(getWidth(), getHeight());
+        int spriteSide = renderer.getSpriteSide();
+        if (blockDrawable == null) {
+            blockDrawable = getResources().getDrawable(R.drawable.block);
+            figureDrawable = getResources().getDrawable(R.drawable.figure);
+        }
+        blockSprite = renderSprite(blockSprite, blockDrawable, spriteSide);
+        figureSprite = renderSprite(figureSprite, figureDrawable, spriteSide);
+        layerTarget.setSprites(blockSprite, figureSprite);
+        frameTarget.setSprites(blockSprite, figureSprite);
+    }
+
+    private static Bitmap renderSprite(Bitmap old, Drawable drawable, int side) {
+        if (old != null)
+            old.recycle();
+        Bitmap result = Bitmap.createBitmap(side, side, Bitmap.Config.ARGB_8888);
+        drawable.setBounds(0, 0, side, side);
+        drawable.draw(new Canvas(result));
+        return result;
+    }
+
+    @Override
+    protected void onSizeChanged(int w, int h, int oldw, int oldh) {
+        super.onSizeChanged(w, h, oldw, oldh);
+        layersStale = true;
     }
 
     @Override
     protected Parcelable onSaveInstanceState() {
         Bundle result = new Bundle();
         result.putParcelable("superState", super.onSaveInstanceState());
-        result.putParcelable("tetrisModel", model);
+        if (model != null)
+            result.putParcelable("tetrisModel", new TetrisModelParcel(model));
         return result;
     }
 
@@ -171,40 +309,47 @@ public class TetrisView extends SurfaceView implements TetrisModel.Callback {
         if (state instanceof Bundle && ((Bundle) state).containsKey("superState")) {
             Bundle bState = (Bundle) state;
             super.onRestoreInstanceState(bState.getParcelable("superState"));
-            model = bState.getParcelable("tetrisModel");
+            TetrisModelParcel parcel = bState.getParcelable("tetrisModel");
+            if (parcel != null)
+                model = parcel.getModel();
         } else
             super.onRestoreInstanceState(state);
     }
 
-    public void refresh(Rect oldRect) {
+    // Game thread: draws what changed since the last frame and clears the model's dirty region.
+    public void refresh() {
+        long start = refreshTime.start();
         final SurfaceHolder holder = getHolder();
-        Rect scaled;
-        Rect newRect = model.getFigureRect();
-        if (oldRect != null) {
-            if (newRect != null) {
-                oldRect.left = Math.min(oldRect.left, newRect.left);
-                oldRect.top = Math.min(oldRect.top, newRect.top);
-                oldRect.right = Math.max(oldRect.right, newRect.right);
-                oldRect.bottom = Math.max(oldRect.bottom, newRect.bottom);
-            }
-            oldRect.left--;
-            oldRect.top--;
-            oldRect.right++;
-            oldRect.bottom++;
-            scaled = scaled(oldRect);
-        } else {
-            getDrawingRect(scaled = new Rect());
+        if (layersStale || boardLayer == null)
+            rebuildCaches();
+        if (!renderer.update(layerTarget)) {
+            refreshTime.stop(start);
+            return;
         }
-        Canvas canvas = holder.lockCanvas(scaled);
+        Area frame = renderer.getFrame();
+        frameRect.set(frame.left, frame.top, frame.right, frame.bottom);
+        long lockStart = lockTime.start();
+        Canvas canvas = holder.lockCanvas(frameRect);
+        lockTime.stop(lockStart);
         if (canvas != null) {
+            long drawStart = drawTime.start();
             try {
-                blankArea(canvas, scaled);
-                drawBorder(canvas);
-                refreshField(canvas);
-                drawFigure(canvas);
+                // The surface may grow the dirty area, everything inside of it is drawn again from the layer.
+                frameArea.set(frameRect.left, frameRect.top, frameRect.right, frameRect.bottom);
+                frameTarget.setCanvas(canvas);
+                renderer.drawFrame(frameTarget, frameArea);
             } finally {
+                drawTime.stop(drawStart);
+                long postStart = postTime.start();
                 holder.unlockCanvasAndPost(canvas);
+                postTime.stop(postStart);
+                if (startupTimer != null) {
+                    startupTimer.stop();
+                    startupTimer = null;
+                }
             }
-        }
+        } else
+            lockFailures.increment();
+        refreshTime.stop(start);
     }
 }
@@ -0,0 +1,113 @@
+package net.dimatomp.tetris.benchmarks;
+
+import net.dimatomp.tetris.Area;
+import net.dimatomp.tetris.TetrisModel;
+import net.dimatomp.tetris.render.FieldRenderer;
+
+import java.lang.management.ManagementFactory;
+import java.util.Arrays;
+import java.util.Random;
+
+// Plays gravity ticks with a few moves in between and fails when the steady state allocates anything.
+// The game is measured on its own first, then with a frame drawn by FieldRenderer after every tick, so
+// bytes from the drawing path show up on their own line.
+// Escape analysis is switched off by the Gradle task, Android's runtime has none either.
+// Model and moves are seeded, so every run plays the same game.
+// With the JIT, every window may allocate up to JIT_TOLERANCE bytes, which it leaves behind while it
+// compiles on the side. Under -Xint nothing else runs, there every window has to be exactly 0; that
+// run catches what allocates only once in a while, it plays fewer ticks to stay quick.
+public class AllocationCheck {
+    private static final int WARMUP_TICKS = 200000;
+    private static final int WINDOW_TICKS = 50000;
+    private static final int INTERPRETED_WARMUP_TICKS = 20000;
+    private static final int INTERPRETED_WINDOW_TICKS = 10000;
+    private static final int WINDOWS = 8;
+    private static final long JIT_TOLERANCE = 1024;
+
+    private final Random random = new Random(1);
+    private final TetrisModel model = new TetrisModel(BoardFixtures.SIDE, BoardFixtures.SIDE, 1);
+    private final FieldRenderer renderer = new FieldRenderer();
+    private final CountingTarget target = new CountingTarget();
+    private int events;
+
+    public static void main(String[] args) {
+        com.sun.management.ThreadMXBean threads =
+                (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        long thread = Thread.currentThread().getId();
+        boolean interpreted = System.getProperty("java.vm.info", "").contains("interpreted");
+        int windowTicks = interpreted ? INTERPRETED_WINDOW_TICKS : WINDOW_TICKS;
+        long tolerance = interpreted ? 0 : JIT_TOLERANCE;
+        AllocationCheck check = new AllocationCheck();
+        check.run(interpreted ? INTERPRETED_WARMUP_TICKS : WARMUP_TICKS, true);
+        boolean failed = check.measure(threads, thread, "game", false, windowTicks, tolerance);
+        if (check.measure(threads, thread, "game and frames", true, windowTicks, tolerance))
+            failed = true;
+        if (failed)
+            System.exit(1);
+    }
+
+    // Prints the bytes of every window, true when any of them allocated more than the tolerance.
+    private boolean measure(com.sun.management.ThreadMXBean threads, long thread, String name, boolean draw,
+                            int windowTicks, long tolerance) {
+        int eventsBefore = events;
+        int spritesBefore = target.getSprites();
+        // The probe itself is measured once and subtracted.
+        long before = threads.getThreadAllocatedBytes(thread);
+        long probe = threads.getThreadAllocatedBytes(thread) - before;
+        long[] allocated = new long[WINDOWS];
+        for (int i = 0; i < WINDOWS; i++) {
+            before = threads.getThreadAllocatedBytes(thread);
+            run(windowTicks, draw);
+            allocated[i] = threads.getThreadAllocatedBytes(thread) - before - probe;
+        }
+        long most = 0;
+        for (long bytes : allocated)
+            most = Math.max(most, bytes);
+        System.out.println(name + ": " + WINDOWS + " windows of " + windowTicks + " ticks, "
+                + (events - eventsBefore) + " events, " + (target.getSprites() - spritesBefore)
+                + " sprites drawn, bytes allocated " + Arrays.toString(allocated) + ", at most " + tolerance);
+        return most > tolerance;
+    }
+
+    private AllocationCheck() {
+        model.registerCallback(new TetrisModel.Callback() {
+            @Override
+            public void onLinesRemoved(int... pos) {
+                events += pos.length;
+            }
+
+            @Override
+            public void onFigureMoved(Area oldArea) {
+                events++;
+            }
+
+            @Override
+            public void onGameOver() {
+                events++;
+            }
+        });
+        model.placeNewFigure(0, 0);
+        renderer.setModel(model);
+        renderer.setStrokeSize(3);
+        renderer.setSize(1080, 1920);
+    }
+
+    private void run(int ticks, boolean draw) {
+        for (int i = 0; i < ticks; i++) {
+            switch (random.nextInt(4)) {
+                case 0:
+                    model.moveX(random.nextBoolean() ? 1 : -1);
+                    break;
+                case 1:
+                    model.turnClockwise(-1);
+                    break;
+            }
+            if (!model.moveY(1)) {
+                int type = random.nextInt(TetrisModel.getFiguresCount());
+                model.throwFigure(type, random.nextInt(TetrisModel.getPosCount(type)));
+            }
+            if (draw && renderer.update(target))
+                renderer.drawFrame(target, renderer.getFrame());
+        }
+    }
+}
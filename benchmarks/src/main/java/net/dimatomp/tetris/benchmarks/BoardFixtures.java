@@ -0,0 +1,58 @@
+package net.dimatomp.tetris.benchmarks;
+
+import net.dimatomp.tetris.TetrisModel;
+
+import java.util.Random;
+
+// Fixed boards for the benchmarks, every fixture leaves the top rows free for the figure. The models are
+// seeded, so new figures spawn in the same columns on every run.
+public final class BoardFixtures {
+    public static final int SIDE = 24;
+    public static final long SEED = 1;
+    public static final String EMPTY = "empty";
+    public static final String TYPICAL = "typical";
+    public static final String HIGH = "high";
+
+    private static final int[] TYPICAL_HEIGHTS = {
+            3, 4, 4, 5, 3, 2, 6, 7, 5, 4, 4, 3, 0, 3, 5, 6, 6, 4, 3, 3, 5, 4, 2, 1
+    };
+    private static final int[] HIGH_HEIGHTS = {
+            14, 15, 17, 16, 12, 13, 18, 17, 15, 14, 16, 15, 0, 11, 13, 16, 17, 15, 14, 12, 16, 17, 15, 13
+    };
+
+    private BoardFixtures() {
+    }
+
+    public static TetrisModel create(String name) {
+        TetrisModel model = new TetrisModel(SIDE, SIDE, SEED);
+        switch (name) {
+            case EMPTY:
+                break;
+            case TYPICAL:
+                fill(model, TYPICAL_HEIGHTS);
+                break;
+            case HIGH:
+                fill(model, HIGH_HEIGHTS);
+                break;
+            default:
+                throw new IllegalArgumentException("Unknown fixture " + name);
+        }
+        return model;
+    }
+
+    // Fills the bottom rows except for column hole, rows above bottom - lines get a second gap.
+    // Dropping the upright I figure into the hole then clears exactly that many lines.
+    public static void fillForLineClear(TetrisModel model, int hole, int lines) {
+        for (int y = model.getHeight() - 4; y < model.getHeight(); y++)
+            for (int x = 0; x < model.getWidth(); x++)
+                model.setOccupied(x, y, x != hole && (y >= model.getHeight() - lines || x != hole + 1));
+    }
+
+    // Columns of the given heights with a few holes, always generated the same way.
+    private static void fill(TetrisModel model, int[] heights) {
+        Random random = new Random(heights.length);
+        for (int x = 0; x < heights.length; x++)
+            for (int y = model.getHeight() - heights[x]; y < model.getHeight(); y++)
+                model.setOccupied(x, y, random.nextInt(6) != 0);
+    }
+}
@@ -0,0 +1,45 @@
+package net.dimatomp.tetris.benchmarks;
+
+import net.dimatomp.tetris.render.RenderTarget;
+
+// Draws nothing and counts the calls, leaving the cost of FieldRenderer itself.
+public final class CountingTarget implements RenderTarget {
+    private int fills;
+    private int sprites;
+    private long pixels;
+
+    public int getFills() {
+        return fills;
+    }
+
+    public int getSprites() {
+        return sprites;
+    }
+
+    // Pixels that a real target would have touched, copies from the layer included.
+    public long getPixels() {
+        return pixels;
+    }
+
+    @Override
+    public void fillBackground(int left, int top, int right, int bottom) {
+        fills++;
+        pixels += (long) (right - left) * (bottom - top);
+    }
+
+    @Override
+    public void drawBorder(float left, float top, float right, float bottom) {
+        fills++;
+    }
+
+    @Override
+    public void drawSprite(int sprite, int left, int top, int right, int bottom) {
+        sprites++;
+        pixels += (long) (right - left) * (bottom - top);
+    }
+
+    @Override
+    public void drawLayer(int left, int top, int right, int bottom) {
+        pixels += (long) (right - left) * (bottom - top);
+    }
+}
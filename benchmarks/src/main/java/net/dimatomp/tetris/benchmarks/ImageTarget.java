@@ -0,0 +1,87 @@
+package net.dimatomp.tetris.benchmarks;
+
+import net.dimatomp.tetris.render.RenderTarget;
+
+import java.awt.AlphaComposite;
+import java.awt.BasicStroke;
+import java.awt.Color;
+import java.awt.Composite;
+import java.awt.GradientPaint;
+import java.awt.Graphics2D;
+import java.awt.geom.Rectangle2D;
+import java.awt.image.BufferedImage;
+
+// Stands in for the Android canvas on a JVM: draws into a BufferedImage with Java2D, headless. The layer
+// is RGB 565 and the sprites are ARGB images scaled into the cells, the formats TetrisView uses.
+public final class ImageTarget implements RenderTarget {
+    private static final Composite GHOST_COMPOSITE = AlphaComposite.getInstance(AlphaComposite.SRC_OVER, 0x50 / 255f);
+
+    private final BufferedImage image;
+    private final Graphics2D graphics;
+    private BufferedImage layer;
+    private BufferedImage blockSprite;
+    private BufferedImage figureSprite;
+    // Reused by drawBorder().
+    private final Rectangle2D.Float border = new Rectangle2D.Float();
+
+    public ImageTarget(int width, int height, float strokeSize) {
+        image = new BufferedImage(width, height, BufferedImage.TYPE_USHORT_565_RGB);
+        graphics = image.createGraphics();
+        graphics.setStroke(new BasicStroke(strokeSize));
+    }
+
+    public BufferedImage getImage() {
+        return image;
+    }
+
+    // What drawLayer() copies from.
+    public void setLayer(BufferedImage layer) {
+        this.layer = layer;
+    }
+
+    public void setSprites(BufferedImage blockSprite, BufferedImage figureSprite) {
+        this.blockSprite = blockSprite;
+        this.figureSprite = figureSprite;
+    }
+
+    // A bordered gradient square, about as costly to scale as the drawables of the app.
+    public static BufferedImage renderSprite(Color color, int side) {
+        BufferedImage result = new BufferedImage(side, side, BufferedImage.TYPE_INT_ARGB);
+        Graphics2D graphics = result.createGraphics();
+        graphics.setPaint(new GradientPaint(0, 0, color.brighter(), side, side, color.darker()));
+        graphics.fillRect(0, 0, side, side);
+        graphics.setColor(Color.WHITE);
+        graphics.drawRect(0, 0, side - 1, side - 1);
+        graphics.dispose();
+        return result;
+    }
+
+    @Override
+    public void fillBackground(int left, int top, int right, int bottom) {
+        graphics.setColor(Color.BLACK);
+        graphics.fillRect(left, top, right - left, bottom - top);
+    }
+
+    @Override
+    public void drawBorder(float left, float top, float right, float bottom) {
+        graphics.setColor(Color.WHITE);
+        border.setRect(left, top, right - left, bottom - top);
+        graphics.draw(border);
+    }
+
+    @Override
+    public void drawSprite(int sprite, int left, int top, int right, int bottom) {
+        if (sprite == GHOST) {
+            Composite composite = graphics.getComposite();
+            graphics.setComposite(GHOST_COMPOSITE);
+            graphics.drawImage(figureSprite, left, top, right - left, bottom - top, null);
+            graphics.setComposite(composite);
+        } else
+            graphics.drawImage(sprite == BLOCK ? blockSprite : figureSprite, left, top, right - left, bottom - top, null);
+    }
+
+    @Override
+    public void drawLayer(int left, int top, int right, int bottom) {
+        graphics.drawImage(layer, left, top, right, bottom, left, top, right, bottom, null);
+    }
+}
@@ -0,0 +1,72 @@
+package net.dimatomp.tetris.benchmarks;
+
+import net.dimatomp.tetris.Board;
+import net.dimatomp.tetris.TetrisModel;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+// Every invocation drops an upright I figure into the well the fixtures leave, clearing four lines,
+// and draws the frame that follows: the rows above the cleared ones all move. The small frames are too
+// quick for a setup per invocation, so the well is restored and drawn inside the measured method;
+// reset measures that alone, to be subtracted.
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class LineClearRenderBenchmark {
+    private static final int I_FIGURE = 0;
+    private static final int UPRIGHT = 1;
+    // The column every fixture leaves empty.
+    private static final int HOLE = 12;
+    private static final int LINES = 4;
+
+    @Param({BoardFixtures.EMPTY, BoardFixtures.TYPICAL, BoardFixtures.HIGH})
+    public String fixture;
+    @Param({"480", "1080", "1440"})
+    public int side;
+    @Param({RenderFixture.IMAGE, RenderFixture.COUNTING})
+    public String target;
+    private RenderFixture render;
+    private Board board;
+
+    @Setup
+    public void prepare() {
+        TetrisModel model = BoardFixtures.create(fixture);
+        BoardFixtures.fillForLineClear(model, HOLE, LINES);
+        board = model.copyBoard();
+        render = new RenderFixture(model, side, target);
+    }
+
+    // The restored board gets a frame of its own, so that the next one only shows the clear.
+    @Benchmark
+    public boolean reset() {
+        TetrisModel model = render.model;
+        model.setBoard(board);
+        model.placeNewFigure(I_FIGURE, UPRIGHT);
+        // The upright I occupies the second column of its box.
+        model.setX(HOLE - 1);
+        model.setY(model.getHeight() - 4);
+        return render.frame();
+    }
+
+    @Benchmark
+    public boolean lineClear() {
+        reset();
+        render.model.throwFigure(I_FIGURE, UPRIGHT);
+        return render.frame();
+    }
+}
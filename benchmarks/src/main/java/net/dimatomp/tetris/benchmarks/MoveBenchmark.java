@@ -0,0 +1,72 @@
+package net.dimatomp.tetris.benchmarks;
+
+import net.dimatomp.tetris.TetrisModel;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class MoveBenchmark {
+    private static final int T_FIGURE = 1;
+
+    @Param({BoardFixtures.EMPTY, BoardFixtures.TYPICAL, BoardFixtures.HIGH})
+    public String fixture;
+    private TetrisModel model;
+    private int direction = 1;
+    private int figureType;
+
+    @Setup
+    public void setUp() {
+        model = BoardFixtures.create(fixture);
+        model.placeNewFigure(T_FIGURE, 0);
+        model.setX(model.getWidth() / 2);
+        model.setY(0);
+    }
+
+    @Benchmark
+    public boolean moveX() {
+        // Bounces between the walls, so a failed move is measured every few calls as well.
+        if (!model.moveX(direction)) {
+            direction = -direction;
+            return false;
+        }
+        return true;
+    }
+
+    @Benchmark
+    public boolean moveY() {
+        if (!model.moveY(1)) {
+            model.setY(0);
+            return false;
+        }
+        return true;
+    }
+
+    @Benchmark
+    public boolean turnClockwise() {
+        return model.turnClockwise(1);
+    }
+
+    @Benchmark
+    public int placeNewFigure() {
+        figureType = (figureType + 1) % TetrisModel.getFiguresCount();
+        model.placeNewFigure(figureType, 0);
+        return model.getX();
+    }
+}
@@ -0,0 +1,60 @@
+package net.dimatomp.tetris.benchmarks;
+
+import net.dimatomp.tetris.TetrisModel;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+// Frames of the field over the board fixtures at phone screen sizes. The image target draws with Java2D,
+// the counting one leaves the renderer's own cost. Allocations per frame are the gc profiler's alloc.rate.norm.
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class RenderBenchmark {
+    @Param({BoardFixtures.EMPTY, BoardFixtures.TYPICAL, BoardFixtures.HIGH})
+    public String fixture;
+    @Param({"480", "1080", "1440"})
+    public int side;
+    @Param({RenderFixture.IMAGE, RenderFixture.COUNTING})
+    public String target;
+    private RenderFixture render;
+    private int direction = 1;
+
+    @Setup(Level.Trial)
+    public void prepare() {
+        render = new RenderFixture(BoardFixtures.create(fixture), side, target);
+    }
+
+    // The whole layer drawn again, as after the surface was created or the viewport scrolled.
+    @Benchmark
+    public boolean fullFrame() {
+        render.renderer.invalidate();
+        return render.frame();
+    }
+
+    // The figure moves a column, back and forth between the walls, and its ghost follows.
+    @Benchmark
+    public boolean typicalMove() {
+        TetrisModel model = render.model;
+        if (!model.moveX(direction)) {
+            direction = -direction;
+            model.moveX(direction);
+        }
+        return render.frame();
+    }
+}
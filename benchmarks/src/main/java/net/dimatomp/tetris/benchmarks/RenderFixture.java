@@ -0,0 +1,58 @@
+package net.dimatomp.tetris.benchmarks;
+
+import net.dimatomp.tetris.TetrisModel;
+import net.dimatomp.tetris.render.FieldRenderer;
+import net.dimatomp.tetris.render.RenderTarget;
+
+import java.awt.Color;
+
+// A model drawn by FieldRenderer the way TetrisView draws it, on Java2D images or on counting targets.
+public final class RenderFixture {
+    public static final String IMAGE = "image";
+    public static final String COUNTING = "counting";
+
+    public final TetrisModel model;
+    public final FieldRenderer renderer = new FieldRenderer();
+    private final RenderTarget layer;
+    private final RenderTarget frame;
+
+    // A portrait screen side wide, the field is a square of its width. The stroke is 1dip on a 360dp wide screen.
+    public RenderFixture(TetrisModel model, int side, String target) {
+        this.model = model;
+        int width = side;
+        int height = side * 16 / 9;
+        float strokeSize = side / 360f;
+        model.placeNewFigure(0, 0);
+        renderer.setModel(model);
+        renderer.setStrokeSize(strokeSize);
+        renderer.setSize(width, height);
+        switch (target) {
+            case IMAGE:
+                ImageTarget layerImage = new ImageTarget(width, height, strokeSize);
+                ImageTarget frameImage = new ImageTarget(width, height, strokeSize);
+                int spriteSide = renderer.getSpriteSide();
+                for (ImageTarget image : new ImageTarget[]{layerImage, frameImage}) {
+                    image.setLayer(layerImage.getImage());
+                    image.setSprites(ImageTarget.renderSprite(Color.GRAY, spriteSide),
+                            ImageTarget.renderSprite(Color.ORANGE, spriteSide));
+                }
+                layer = layerImage;
+                frame = frameImage;
+                break;
+            case COUNTING:
+                layer = frame = new CountingTarget();
+                break;
+            default:
+                throw new IllegalArgumentException("Unknown target " + target);
+        }
+        frame();
+    }
+
+    // One frame as the game thread draws it, false when nothing visible changed.
+    public boolean frame() {
+        if (!renderer.update(layer))
+            return false;
+        renderer.drawFrame(frame, renderer.getFrame());
+        return true;
+    }
+}
@@ -0,0 +1,49 @@
+package net.dimatomp.tetris.benchmarks;
+
+import net.dimatomp.tetris.StateCodec;
+import net.dimatomp.tetris.TetrisModel;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+// Save and restore cost of a game, as paid on every configuration change and in onPause().
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class StateCodecBenchmark {
+    @Param({BoardFixtures.EMPTY, BoardFixtures.TYPICAL, BoardFixtures.HIGH})
+    public String fixture;
+    private TetrisModel model;
+    private byte[] encoded;
+
+    @Setup
+    public void setUp() {
+        model = BoardFixtures.create(fixture);
+        model.placeNewFigure(0, 0);
+        encoded = StateCodec.encode(model);
+    }
+
+    @Benchmark
+    public byte[] encode() {
+        return StateCodec.encode(model);
+    }
+
+    @Benchmark
+    public TetrisModel decode() {
+        return StateCodec.decode(encoded);
+    }
+}
@@ -0,0 +1,62 @@
+package net.dimatomp.tetris.benchmarks;
+
+import net.dimatomp.tetris.Board;
+import net.dimatomp.tetris.TetrisModel;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+// Every invocation drops an upright I figure into a prepared well, clearing the given number of lines.
+// A throw takes too little time for a setup per invocation to be timed apart from it, so the well is
+// restored inside the measured method; reset measures the restoring alone, to be subtracted.
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ThrowBenchmark {
+    private static final int I_FIGURE = 0;
+    private static final int UPRIGHT = 1;
+    private static final int HOLE = 11;
+
+    @Param({"0", "1", "2", "3", "4"})
+    public int lines;
+    private TetrisModel model;
+    private Board fixture;
+
+    @Setup
+    public void prepare() {
+        model = BoardFixtures.create(BoardFixtures.EMPTY);
+        BoardFixtures.fillForLineClear(model, HOLE, lines);
+        fixture = model.copyBoard();
+    }
+
+    @Benchmark
+    public int reset() {
+        model.setBoard(fixture);
+        model.placeNewFigure(I_FIGURE, UPRIGHT);
+        // The upright I occupies the second column of its box.
+        model.setX(HOLE - 1);
+        model.setY(model.getHeight() - 4);
+        return model.getX();
+    }
+
+    @Benchmark
+    public int throwFigure() {
+        reset();
+        model.throwFigure(I_FIGURE, UPRIGHT);
+        return model.getX();
+    }
+}
@@ -0,0 +1,30 @@
+package net.dimatomp.tetris;
+
+// Rectangle of field cells, right and bottom edges exclusive.
+public class Area {
+    public int left;
+    public int top;
+    public int right;
+    public int bottom;
+
+    public Area() {
+    }
+
+    public Area(int left, int top, int right, int bottom) {
+        set(left, top, right, bottom);
+    }
+
+    public void set(int left, int top, int right, int bottom) {
+        this.left = left;
+        this.top = top;
+        this.right = right;
+        this.bottom = bottom;
+    }
+
+    public void union(Area other) {
+        left = Math.min(left, other.left);
+        top = Math.min(top, other.top);
+        right = Math.max(right, other.right);
+        bottom = Math.max(bottom, other.bottom);
+    }
+}
@@ -0,0 +1,53 @@
+package net.dimatomp.tetris;
+
+// Delayed auto shift: a held command repeats once the delay has passed since the press, then once per
+// period. Only one command is held at a time, pressing another one takes over.
+public class AutoRepeat {
+    public static final int NONE = -1;
+
+    private long delayNanos;
+    private long periodNanos;
+    private int held = NONE;
+    private long nextNanos;
+
+    public AutoRepeat(long delayNanos, long periodNanos) {
+        setTiming(delayNanos, periodNanos);
+    }
+
+    public void setTiming(long delayNanos, long periodNanos) {
+        if (periodNanos <= 0)
+            throw new IllegalArgumentException("period must be positive");
+        this.delayNanos = delayNanos;
+        this.periodNanos = periodNanos;
+    }
+
+    public void press(int command, long nanos) {
+        held = command;
+        nextNanos = nanos + delayNanos;
+    }
+
+    public void release(int command) {
+        if (held == command)
+            held = NONE;
+    }
+
+    public void reset() {
+        held = NONE;
+    }
+
+    public int getHeld() {
+        return held;
+    }
+
+    // Repeats of the held command that are due by the given time, counted only once.
+    public int due(long nanos) {
+        if (held == NONE)
+            return 0;
+        int count = 0;
+        while (nextNanos - nanos <= 0) {
+            nextNanos += periodNanos;
+            count++;
+        }
+        return count;
+    }
+}
@@ -0,0 +1,369 @@
+package net.dimatomp.tetris;
+
+import java.util.Arrays;
+
+// Bitboard split into chunks of 64 by 64 cells. A chunk is 64 words, one per row, bit (x & 63) of
+// word (y & 63) is cell (x, y). Empty chunks are null, so memory follows the occupied area and rows
+// are cleared without touching the empty parts of the board.
+// The skyline keeps the top occupied row of every column, so that a drop costs one lookup per
+// figure column instead of a collision scan per row.
+// The Zobrist hash follows every change. Cell keys are computed from the column rather than kept in a
+// table, so any board size costs nothing: a row hashes to the XOR of the keys of its cells, the board
+// to the XOR of its rows mixed with their index. Removing a row rehashes the rows above, not their cells.
+public final class Board {
+    private static final int CHUNK_BITS = 6;
+    private static final int CHUNK_SIDE = 1 << CHUNK_BITS;
+    // Emptied chunks kept for reuse, so that a game in steady state does not allocate.
+    private static final int SPARE_CHUNKS = 4;
+    private static final long GOLDEN = 0x9E3779B97F4A7C15L;
+
+    private final int width;
+    private final int height;
+    private final int chunkColumns;
+    private final long lastWordMask;
+    // Indexed by (y >> 6) * chunkColumns + (x >> 6).
+    private final long[][] chunks;
+    private final long[][] spare = new long[SPARE_CHUNKS][];
+    private int spareCount;
+    // Top occupied row of every column, the height for an empty one.
+    private final int[] skyline;
+    // Occupied cells of every column, so that holes are counted without a scan.
+    private final int[] columnCells;
+    private final long[] rowHashes;
+    private long hash;
+
+    public Board(int width, int height) {
+        this.width = width;
+        this.height = height;
+        this.chunkColumns = (width + CHUNK_SIDE - 1) >>> CHUNK_BITS;
+        this.lastWordMask = -1L >>> (chunkColumns * CHUNK_SIDE - width);
+        this.chunks = new long[chunkColumns * ((height + CHUNK_SIDE - 1) >>> CHUNK_BITS)][];
+        this.skyline = new int[width];
+        Arrays.fill(skyline, height);
+        this.columnCells = new int[width];
+        this.rowHashes = new long[height];
+    }
+
+    public int getWidth() {
+        return width;
+    }
+
+    public int getHeight() {
+        return height;
+    }
+
+    // Number of chunks holding any cells, memory use is proportional to it.
+    public int getChunkCount() {
+        int result = 0;
+        for (long[] chunk : chunks)
+            if (chunk != null)
+                result++;
+        return result;
+    }
+
+    public boolean isOccupied(int x, int y) {
+        return (word(y, x >>> CHUNK_BITS) & 1L << (x & 63)) != 0;
+    }
+
+    public void setOccupied(int x, int y, boolean value) {
+        if (isOccupied(x, y) == value)
+            return;
+        setRowHash(y, rowHashes[y] ^ columnKey(x));
+        columnCells[x] += value ? 1 : -1;
+        if (value) {
+            orWord(y, x >>> CHUNK_BITS, 1L << (x & 63));
+            skyline[x] = Math.min(skyline[x], y);
+            return;
+        }
+        long[] chunk = chunks[chunkIndex(y, x >>> CHUNK_BITS)];
+        if (chunk != null)
+            chunk[y & 63] &= ~(1L << (x & 63));
+        if (skyline[x] == y)
+            skyline[x] = scanTop(x, y + 1);
+    }
+
+    // Top occupied row of the column, the height if it is empty.
+    public int getColumnTop(int x) {
+        return skyline[x];
+    }
+
+    public int getColumnCells(int x) {
+        return columnCells[x];
+    }
+
+    // Equal for boards with the same cells, whatever led to them.
+    public long getHash() {
+        return hash;
+    }
+
+    // SplitMix64's finalizer, spreads the keys over all 64 bits.
+    static long mix(long z) {
+        z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+        z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+        return z ^ (z >>> 31);
+    }
+
+    private static long columnKey(int x) {
+        return mix((x + 1L) * GOLDEN);
+    }
+
+    // Empty rows do not count, so the rows pushed in from the top by removeRow() need no update.
+    private static long rowTerm(long rowHash, int y) {
+        return rowHash == 0 ? 0 : mix(rowHash + (y + 1L) * GOLDEN);
+    }
+
+    private void setRowHash(int y, long rowHash) {
+        hash ^= rowTerm(rowHashes[y], y) ^ rowTerm(rowHash, y);
+        rowHashes[y] = rowHash;
+    }
+
+    private int scanTop(int x, int from) {
+        int y = from;
+        while (y < height && !isOccupied(x, y))
+            y++;
+        return y;
+    }
+
+    private int chunkIndex(int y, int column) {
+        return (y >>> CHUNK_BITS) * chunkColumns + column;
+    }
+
+    // Word of row y covering columns column * 64 to column * 64 + 63.
+    private long word(int y, int column) {
+        long[] chunk = chunks[chunkIndex(y, column)];
+        return chunk == null ? 0 : chunk[y & 63];
+    }
+
+    private void orWord(int y, int column, long bits) {
+        if (bits == 0)
+            return;
+        int index = chunkIndex(y, column);
+        long[] chunk = chunks[index];
+        if (chunk == null)
+            chunks[index] = chunk = newChunk();
+        chunk[y & 63] |= bits;
+    }
+
+    private long[] newChunk() {
+        return spareCount == 0 ? new long[CHUNK_SIDE] : spare[--spareCount];
+    }
+
+    private void releaseChunk(int index) {
+        long[] chunk = chunks[index];
+        chunks[index] = null;
+        if (spareCount < SPARE_CHUNKS) {
+            Arrays.fill(chunk, 0);
+            spare[spareCount++] = chunk;
+        }
+    }
+
+    private static boolean isEmpty(long[] chunk) {
+        for (long word : chunk)
+            if (word != 0)
+                return false;
+        return true;
+    }
+
+    public boolean collides(Figure figure, int x, int y) {
+        if (x + figure.xMin < 0 || x + figure.xMax > width)
+            return true;
+        int[] masks = figure.rowMasks;
+        for (int r = Math.max(0, -y); r < masks.length; r++) {
+            int mask = masks[r];
+            if (mask == 0)
+                continue;
+            if (y + r >= height || intersects(y + r, mask, x))
+                return true;
+        }
+        return false;
+    }
+
+    // The figure is expected to be in bounds horizontally, its rows outside of the board are skipped.
+    public void stamp(Figure figure, int x, int y) {
+        int[] masks = figure.rowMasks;
+        for (int r = Math.max(0, -y); r < masks.length && y + r < height; r++) {
+            int mask = masks[r];
+            if (mask == 0)
+                continue;
+            long rowHash = rowHashes[y + r];
+            for (int c = figure.xMin; c < figure.xMax; c++) {
+                if ((mask & 1 << c) == 0)
+                    continue;
+                if (skyline[x + c] > y + r)
+                    skyline[x + c] = y + r;
+                if (!isOccupied(x + c, y + r)) {
+                    rowHash ^= columnKey(x + c);
+                    columnCells[x + c]++;
+                }
+            }
+            setRowHash(y + r, rowHash);
+            if (x < 0) {
+                orWord(y + r, 0, (long) mask >>> -x);
+                continue;
+            }
+            int column = x >>> CHUNK_BITS;
+            int offset = x & 63;
+            orWord(y + r, column, (long) mask << offset);
+            if (offset != 0 && column + 1 < chunkColumns)
+                orWord(y + r, column + 1, (long) mask >>> (64 - offset));
+        }
+    }
+
+    public boolean isRowEmpty(int y) {
+        for (int column = 0; column < chunkColumns; column++)
+            if (word(y, column) != 0)
+                return false;
+        return true;
+    }
+
+    public boolean isFull(int y) {
+        for (int column = 0; column < chunkColumns - 1; column++)
+            if (word(y, column) != -1L)
+                return false;
+        return word(y, chunkColumns - 1) == lastWordMask;
+    }
+
+    // Marks the cells that removeRow(y) is going to change. Runs of empty chunks are skipped.
+    void markRemoval(int y, DirtyRegion region) {
+        for (int column = 0; column < chunkColumns; column++) {
+            for (int chunkRow = y >>> CHUNK_BITS; chunkRow >= 0; chunkRow--) {
+                if (chunks[chunkRow * chunkColumns + column] == null
+                        && (chunkRow == 0 || chunks[(chunkRow - 1) * chunkColumns + column] == null))
+                    continue;
+                int top = chunkRow << CHUNK_BITS;
+                for (int row = Math.min(y, top + CHUNK_SIDE - 1); row >= top; row--) {
+                    long diff = word(row, column) ^ (row == 0 ? 0 : word(row - 1, column));
+                    if (diff != 0)
+                        region.markSpan(row, column * 64 + Long.numberOfTrailingZeros(diff),
+                                column * 64 + 64 - Long.numberOfLeadingZeros(diff));
+                }
+            }
+        }
+    }
+
+    // Moves every row above y one row down and empties the top one. Chunks that are empty and
+    // stay empty are not touched, chunks that become empty are freed.
+    public void removeRow(int y) {
+        for (int x = 0; x < width; x++)
+            if (isOccupied(x, y))
+                columnCells[x]--;
+        for (int column = 0; column < chunkColumns; column++) {
+            for (int chunkRow = y >>> CHUNK_BITS; chunkRow >= 0; chunkRow--) {
+                int index = chunkRow * chunkColumns + column;
+                long[] chunk = chunks[index];
+                long[] above = chunkRow == 0 ? null : chunks[index - chunkColumns];
+                long carried = above == null ? 0 : above[CHUNK_SIDE - 1];
+                if (chunk == null) {
+                    if (carried == 0)
+                        continue;
+                    chunks[index] = chunk = newChunk();
+                }
+                int last = chunkRow == y >>> CHUNK_BITS ? y & 63 : CHUNK_SIDE - 1;
+                System.arraycopy(chunk, 0, chunk, 1, last);
+                chunk[0] = carried;
+                if (carried == 0 && isEmpty(chunk))
+                    releaseChunk(index);
+            }
+        }
+        for (int row = y; row >= 0; row--) {
+            hash ^= rowTerm(rowHashes[row], row);
+            if (row < y)
+                hash ^= rowTerm(rowHashes[row], row + 1);
+        }
+        System.arraycopy(rowHashes, 0, rowHashes, 1, y);
+        rowHashes[0] = 0;
+        for (int x = 0; x < width; x++) {
+            if (skyline[x] < y)
+                skyline[x]++;
+            else if (skyline[x] == y)
+                skyline[x] = scanTop(x, y + 1);
+        }
+    }
+
+    // Index of the first kick of the figure that fits at (x, y), -1 if none does.
+    public int findKick(Figure figure, int x, int y) {
+        for (int i = 0; i < figure.getKickCount(); i++)
+            if (!collides(figure, x + figure.getKickX(i), y + figure.getKickY(i)))
+                return i;
+        return -1;
+    }
+
+    // Row the figure comes to rest at when dropped from (x, y). Constant time per figure column while
+    // the figure is above the skyline, as it is unless it was slid under an overhang.
+    public int dropY(Figure figure, int x, int y) {
+        int result = Integer.MAX_VALUE;
+        for (int c = figure.xMin; c < figure.xMax; c++) {
+            int bottom = figure.bottom[c];
+            if (bottom < 0)
+                continue;
+            if (y + bottom >= skyline[x + c])
+                return scanDrop(figure, x, y);
+            result = Math.min(result, skyline[x + c] - 1 - bottom);
+        }
+        return result;
+    }
+
+    private int scanDrop(Figure figure, int x, int y) {
+        while (!collides(figure, x, y + 1))
+            y++;
+        return y;
+    }
+
+    // Stamps the figure and removes the rows it completed, returns their count.
+    public int settle(Figure figure, int x, int y) {
+        stamp(figure, x, y);
+        int count = 0;
+        for (int r = Math.max(0, -y); r < figure.height && y + r < height; r++) {
+            if (figure.rowMasks[r] != 0 && isFull(y + r)) {
+                removeRow(y + r);
+                count++;
+            }
+        }
+        return count;
+    }
+
+    public Board copy() {
+        Board result = new Board(width, height);
+        result.copyFrom(this);
+        return result;
+    }
+
+    // Both boards must be of the same size.
+    public void copyFrom(Board other) {
+        for (int i = 0; i < chunks.length; i++) {
+            if (other.chunks[i] == null) {
+                if (chunks[i] != null)
+                    releaseChunk(i);
+                continue;
+            }
+            if (chunks[i] == null)
+                chunks[i] = newChunk();
+            System.arraycopy(other.chunks[i], 0, chunks[i], 0, CHUNK_SIDE);
+        }
+        System.arraycopy(other.skyline, 0, skyline, 0, width);
+        System.arraycopy(other.columnCells, 0, columnCells, 0, width);
+        System.arraycopy(other.rowHashes, 0, rowHashes, 0, height);
+        hash = other.hash;
+    }
+
+    public void clear() {
+        for (int i = 0; i < chunks.length; i++)
+            if (chunks[i] != null)
+                releaseChunk(i);
+        Arrays.fill(skyline, height);
+        Arrays.fill(columnCells, 0);
+        Arrays.fill(rowHashes, 0);
+        hash = 0;
+    }
+
+    private boolean intersects(int row, int mask, int x) {
+        if (x < 0)
+            return (word(row, 0) & (long) mask >>> -x) != 0;
+        int column = x >>> CHUNK_BITS;
+        int offset = x & 63;
+        if ((word(row, column) & (long) mask << offset) != 0)
+            return true;
+        return offset != 0 && column + 1 < chunkColumns
+                && (word(row, column + 1) & (long) mask >>> (64 - offset)) != 0;
+    }
+}
@@ -0,0 +1,112 @@
+package net.dimatomp.tetris;
+
+// What a model went through since the last frame, merged by FrameDispatcher. Valid only while it is
+// being delivered, the dispatcher reuses it for the next frame.
+public final class ChangeSet {
+    private final Area damage = new Area();
+    private boolean damaged;
+    // In the order of removal, every row as it was numbered when it went.
+    private int[] removedLines = new int[Figure.getMaxHeight()];
+    private int removedLineCount;
+    private int eventCount;
+    private boolean gameOver;
+    private int figureType;
+    private int turnDegree;
+    private int x;
+    private int y;
+    private int score;
+
+    ChangeSet() {
+    }
+
+    public boolean isEmpty() {
+        return eventCount == 0;
+    }
+
+    // Model events merged into this one.
+    public int getEventCount() {
+        return eventCount;
+    }
+
+    // Cells that may look different, null when none do. Removed lines damage every row above them.
+    public Area getDamage() {
+        return damaged ? damage : null;
+    }
+
+    public int getRemovedLineCount() {
+        return removedLineCount;
+    }
+
+    public int getRemovedLine(int i) {
+        return removedLines[i];
+    }
+
+    public boolean isGameOver() {
+        return gameOver;
+    }
+
+    // The pose of the figure and the score at the end of the frame.
+    public int getFigureType() {
+        return figureType;
+    }
+
+    public int getTurnDegree() {
+        return turnDegree;
+    }
+
+    public int getX() {
+        return x;
+    }
+
+    public int getY() {
+        return y;
+    }
+
+    public int getScore() {
+        return score;
+    }
+
+    void damage(int left, int top, int right, int bottom) {
+        if (!damaged) {
+            damage.set(left, top, right, bottom);
+            damaged = true;
+            return;
+        }
+        damage.left = Math.min(damage.left, left);
+        damage.top = Math.min(damage.top, top);
+        damage.right = Math.max(damage.right, right);
+        damage.bottom = Math.max(damage.bottom, bottom);
+    }
+
+    void addRemovedLine(int y) {
+        if (removedLineCount == removedLines.length) {
+            int[] grown = new int[removedLines.length * 2];
+            System.arraycopy(removedLines, 0, grown, 0, removedLineCount);
+            removedLines = grown;
+        }
+        removedLines[removedLineCount++] = y;
+    }
+
+    void countEvent() {
+        eventCount++;
+    }
+
+    void setGameOver() {
+        gameOver = true;
+    }
+
+    void capture(TetrisModel model) {
+        figureType = model.getFigureType();
+        turnDegree = model.getTurnDegree();
+        x = model.getX();
+        y = model.getY();
+        score = model.getScore();
+    }
+
+    void clear() {
+        damaged = false;
+        removedLineCount = 0;
+        eventCount = 0;
+        gameOver = false;
+    }
+}
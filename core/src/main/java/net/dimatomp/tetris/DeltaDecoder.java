@@ -0,0 +1,135 @@
+package net.dimatomp.tetris;
+
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+
+// Rebuilds the model behind a DeltaEncoder stream. The events are applied through the model's own
+// methods, so callbacks registered on getModel() see the same moves, removed lines and game over as on
+// the original. A key frame sets the state without callbacks: the encoder writes one only after the event
+// that led to it, or where the original changed without any. The model is only replaced when a key frame
+// changes the field size.
+public final class DeltaDecoder {
+    private TetrisModel model;
+
+    // Null until the first key frame, events before it are skipped.
+    public TetrisModel getModel() {
+        return model;
+    }
+
+    // Applies every complete event in the buffer and leaves a trailing partial one in it. Returns the
+    // number of events applied.
+    public int decode(ByteBuffer in) {
+        int count = 0;
+        while (in.hasRemaining()) {
+            int start = in.position();
+            try {
+                if (!decodeEvent(in)) {
+                    in.position(start);
+                    break;
+                }
+            } catch (BufferUnderflowException e) {
+                in.position(start);
+                break;
+            }
+            count++;
+        }
+        return count;
+    }
+
+    // False if the event is not complete yet.
+    private boolean decodeEvent(ByteBuffer in) {
+        int opcode = in.get();
+        if (opcode == DeltaEncoder.KEY_FRAME) {
+            int length = getVarInt(in);
+            if (in.remaining() < length)
+                return false;
+            byte[] state = new byte[length];
+            in.get(state);
+            applyKeyFrame(StateCodec.decode(state));
+            return true;
+        }
+        switch (opcode) {
+            case DeltaEncoder.LEFT:
+            case DeltaEncoder.RIGHT:
+                if (model != null)
+                    check(model.moveX(opcode == DeltaEncoder.LEFT ? -1 : 1));
+                return true;
+            case DeltaEncoder.DOWN:
+                if (model != null)
+                    check(model.moveY(1));
+                return true;
+            case DeltaEncoder.DROP:
+                if (model != null)
+                    check(model.moveY(model.getDropY() - model.getY()));
+                return true;
+            case DeltaEncoder.TURN: {
+                int rot = in.get();
+                if (model != null)
+                    check(model.turnClockwise(rot));
+                return true;
+            }
+            case DeltaEncoder.FIGURE: {
+                int type = in.get();
+                int turn = in.get();
+                int x = DeltaEncoder.unzigzag(getVarInt(in));
+                int y = DeltaEncoder.unzigzag(getVarInt(in));
+                if (model != null)
+                    setFigure(type, turn, x, y);
+                return true;
+            }
+            case DeltaEncoder.LOCK: {
+                int type = in.get();
+                int turn = in.get();
+                int x = DeltaEncoder.unzigzag(getVarInt(in));
+                int lines = getVarInt(in);
+                long randomState = in.getLong();
+                if (model != null) {
+                    int score = model.getScore();
+                    model.throwFigure(type, turn, x);
+                    model.getRandom().setState(randomState);
+                    if (model.getScore() - score != lines)
+                        throw new IllegalStateException("Stream does not match the model");
+                }
+                return true;
+            }
+            default:
+                throw new IllegalArgumentException("Unknown event " + opcode);
+        }
+    }
+
+    private void applyKeyFrame(TetrisModel state) {
+        if (model == null || model.getWidth() != state.getWidth() || model.getHeight() != state.getHeight()) {
+            model = state;
+            return;
+        }
+        model.setBoard(state.getBoard());
+        model.setScore(state.getScore());
+        model.setLockCount(state.getLockCount());
+        model.getRandom().setState(state.getRandom().getState());
+        setFigure(state.getFigureType(), state.getTurnDegree(), state.getX(), state.getY());
+    }
+
+    private void setFigure(int type, int turn, int x, int y) {
+        model.getDirtyRegion().markAll();
+        model.setFigureType(type);
+        model.setTurnDegree(turn);
+        model.setX(x);
+        model.setY(y);
+    }
+
+    private static void check(boolean applied) {
+        if (!applied)
+            throw new IllegalStateException("Stream does not match the model");
+    }
+
+    private static int getVarInt(ByteBuffer in) {
+        int result = 0;
+        for (int shift = 0; shift < 35; shift += 7) {
+            int b = in.get();
+            result |= (b & 0x7F) << shift;
+            if ((b & 0x80) == 0)
+                return result;
+        }
+        throw new IllegalArgumentException("Malformed varint");
+    }
+}
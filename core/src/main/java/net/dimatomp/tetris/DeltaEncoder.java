@@ -0,0 +1,191 @@
+package net.dimatomp.tetris;
+
+import java.nio.ByteBuffer;
+
+// Turns the callbacks of a model into a stream of small events for spectators and recordings, read back
+// by DeltaDecoder. Every event starts with an opcode byte:
+//   KEY_FRAME  varint length and the StateCodec form of the model
+//   LEFT, RIGHT, DOWN  the figure moved by one cell
+//   TURN       turn delta byte, the decoder finds the same kick on the same field
+//   DROP       the figure fell all the way down at once
+//   FIGURE     figure type and turn, zigzag varint x and y, for moves that fit none of the above
+//   LOCK       figure type and turn, zigzag varint x of the new figure, varint lines removed and
+//              the 8 byte random state after the spawn
+// A lock that ends the game is written the same way. Every keyFrameInterval-th lock is followed by a
+// key frame, the LOCK itself is always written so that decoders already following get its callbacks.
+// Changes made to the model without a callback, like a new game on the same model, need a writeKeyFrame().
+public final class DeltaEncoder implements TetrisModel.Callback {
+    static final int KEY_FRAME = 1;
+    static final int LEFT = 2;
+    static final int RIGHT = 3;
+    static final int DOWN = 4;
+    static final int TURN = 5;
+    static final int FIGURE = 6;
+    static final int LOCK = 7;
+    static final int DROP = 8;
+    private static final int DEFAULT_KEY_FRAME_INTERVAL = 100;
+
+    private final TetrisModel model;
+    private final int keyFrameInterval;
+    private ByteBuffer buffer = ByteBuffer.allocateDirect(4096);
+    private long drained;
+    private long keyFrameOffset;
+    // The state the last event left the decoder in.
+    private int figureType;
+    private int turnDegree;
+    private int x;
+    private int y;
+    private int score;
+    private long lockCount;
+
+    public DeltaEncoder(TetrisModel model) {
+        this(model, DEFAULT_KEY_FRAME_INTERVAL);
+    }
+
+    // Writes a key frame after every keyFrameInterval locks, so that a spectator joins within as many figures.
+    // 0 writes only the first one.
+    public DeltaEncoder(TetrisModel model, int keyFrameInterval) {
+        this.model = model;
+        this.keyFrameInterval = keyFrameInterval;
+        writeKeyFrame();
+        model.registerCallback(this);
+    }
+
+    // Offset in the stream of the last key frame, where a new decoder can start.
+    public long getKeyFrameOffset() {
+        return keyFrameOffset;
+    }
+
+    // Bytes written to the stream so far, drained or not.
+    public long getOffset() {
+        return drained + buffer.position();
+    }
+
+    public boolean isEmpty() {
+        return buffer.position() == 0;
+    }
+
+    // Moves as much of the stream as fits into target, returns the number of bytes moved.
+    public int drainTo(ByteBuffer target) {
+        buffer.flip();
+        int count = Math.min(buffer.remaining(), target.remaining());
+        int limit = buffer.limit();
+        buffer.limit(count);
+        target.put(buffer);
+        buffer.limit(limit);
+        buffer.compact();
+        drained += count;
+        return count;
+    }
+
+    public void writeKeyFrame() {
+        byte[] state = StateCodec.encode(model);
+        ensureRemaining(6 + state.length);
+        keyFrameOffset = getOffset();
+        buffer.put((byte) KEY_FRAME);
+        putVarInt(state.length);
+        buffer.put(state);
+        figureType = model.getFigureType();
+        turnDegree = model.getTurnDegree();
+        x = model.getX();
+        y = model.getY();
+        score = model.getScore();
+        lockCount = model.getLockCount();
+    }
+
+    @Override
+    public void onLinesRemoved(int... pos) {
+        // Implied by the lock that removed them.
+    }
+
+    @Override
+    public void onFigureMoved(Area oldArea) {
+        if (model.getLockCount() != lockCount)
+            writeLock();
+        else
+            writeMove();
+    }
+
+    @Override
+    public void onGameOver() {
+        if (model.getLockCount() != lockCount)
+            writeLock();
+    }
+
+    private void writeMove() {
+        int dx = model.getX() - x;
+        int dy = model.getY() - y;
+        ensureRemaining(16);
+        if (model.getFigureType() != figureType) {
+            writeFigure();
+        } else if (model.getTurnDegree() != turnDegree) {
+            buffer.put((byte) TURN);
+            buffer.put((byte) (model.getTurnDegree() - turnDegree));
+        } else if (dy == 0 && (dx == 1 || dx == -1)) {
+            buffer.put((byte) (dx < 0 ? LEFT : RIGHT));
+        } else if (dx == 0 && dy == 1) {
+            buffer.put((byte) DOWN);
+        } else if (dx == 0 && dy > 1 && model.getY() == model.getDropY()) {
+            buffer.put((byte) DROP);
+        } else if (dx != 0 || dy != 0) {
+            writeFigure();
+        }
+        figureType = model.getFigureType();
+        turnDegree = model.getTurnDegree();
+        x = model.getX();
+        y = model.getY();
+    }
+
+    private void writeFigure() {
+        buffer.put((byte) FIGURE);
+        buffer.put((byte) model.getFigureType());
+        buffer.put((byte) model.getTurnDegree());
+        putVarInt(zigzag(model.getX()));
+        putVarInt(zigzag(model.getY()));
+    }
+
+    private void writeLock() {
+        long locks = model.getLockCount();
+        boolean keyFrame = keyFrameInterval > 0 && locks / keyFrameInterval != lockCount / keyFrameInterval;
+        ensureRemaining(32);
+        buffer.put((byte) LOCK);
+        buffer.put((byte) model.getFigureType());
+        buffer.put((byte) model.getTurnDegree());
+        putVarInt(zigzag(model.getX()));
+        putVarInt(model.getScore() - score);
+        buffer.putLong(model.getRandom().getState());
+        figureType = model.getFigureType();
+        turnDegree = model.getTurnDegree();
+        x = model.getX();
+        y = model.getY();
+        score = model.getScore();
+        lockCount = locks;
+        if (keyFrame)
+            writeKeyFrame();
+    }
+
+    private void ensureRemaining(int count) {
+        if (buffer.remaining() >= count)
+            return;
+        ByteBuffer grown = ByteBuffer.allocateDirect(Math.max(buffer.capacity() * 2, buffer.position() + count));
+        buffer.flip();
+        grown.put(buffer);
+        buffer = grown;
+    }
+
+    private void putVarInt(int value) {
+        while ((value & ~0x7F) != 0) {
+            buffer.put((byte) ((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        buffer.put((byte) value);
+    }
+
+    static int zigzag(int value) {
+        return (value << 1) ^ (value >> 31);
+    }
+
+    static int unzigzag(int value) {
+        return (value >>> 1) ^ -(value & 1);
+    }
+}
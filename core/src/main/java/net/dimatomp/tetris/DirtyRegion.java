@@ -0,0 +1,95 @@
+package net.dimatomp.tetris;
+
+import java.util.Arrays;
+
+// Cells changed since the last clear(), kept as one span of columns per row.
+public class DirtyRegion {
+    private final int width;
+    private final int height;
+    // Span of every row, left >= right for clean rows.
+    private final int[] left;
+    private final int[] right;
+    // Range of rows with a dirty span, top >= bottom when nothing is dirty.
+    private int top;
+    private int bottom;
+
+    public DirtyRegion(int width, int height) {
+        this.width = width;
+        this.height = height;
+        left = new int[height];
+        right = new int[height];
+        Arrays.fill(left, width);
+        top = height;
+    }
+
+    public void mark(int x, int y) {
+        markSpan(y, x, x + 1);
+    }
+
+    // Columns from inclusive, to exclusive, cells outside of the field are ignored.
+    public void markSpan(int y, int from, int to) {
+        if (y < 0 || y >= height)
+            return;
+        from = Math.max(0, from);
+        to = Math.min(width, to);
+        if (from >= to)
+            return;
+        left[y] = Math.min(left[y], from);
+        right[y] = Math.max(right[y], to);
+        top = Math.min(top, y);
+        bottom = Math.max(bottom, y + 1);
+    }
+
+    public void markAll() {
+        Arrays.fill(left, 0);
+        Arrays.fill(right, width);
+        top = 0;
+        bottom = height;
+    }
+
+    public boolean isEmpty() {
+        return top >= bottom;
+    }
+
+    public int getTop() {
+        return top;
+    }
+
+    public int getBottom() {
+        return bottom;
+    }
+
+    public int getLeft(int y) {
+        return left[y];
+    }
+
+    public int getRight(int y) {
+        return right[y];
+    }
+
+    public boolean isRowDirty(int y) {
+        return left[y] < right[y];
+    }
+
+    public Area getBounds(Area result) {
+        int l = width;
+        int r = 0;
+        for (int y = top; y < bottom; y++) {
+            if (left[y] < right[y]) {
+                l = Math.min(l, left[y]);
+                r = Math.max(r, right[y]);
+            }
+        }
+        result.set(l, top, r, bottom);
+        return result;
+    }
+
+    public void clear() {
+        for (int y = top; y < bottom; y++) {
+            left[y] = width;
+            right[y] = 0;
+        }
+        top = height;
+        bottom = 0;
+    }
+}
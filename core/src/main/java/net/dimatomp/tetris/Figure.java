@@ -0,0 +1,172 @@
+package net.dimatomp.tetris;
+
+// One turned state of a figure, compiled once into everything the model asks about it.
+public final class Figure {
+    // Currently supplying all turned states explicitly.
+    // Array of figures, each one represented as a sequence of states, each state as a sequence of columns.
+    private static final Figure[][] FIGURES = new Figure[][]{
+            new Figure[]{
+                    new Figure(".#", ".#", ".#", ".#"),
+                    new Figure("....", "####")
+            },
+            new Figure[]{
+                    new Figure(".#.", ".##", ".#."),
+                    new Figure("...", "###", ".#."),
+                    new Figure(".#", "##", ".#"),
+                    new Figure(".#.", "###")
+            },
+            new Figure[]{
+                    new Figure("#.", "##", ".#"),
+                    new Figure(".##", "##.")
+            },
+            new Figure[]{
+                    new Figure(".#", "##", "#."),
+                    new Figure("##.", ".##")
+            },
+            new Figure[]{
+                    new Figure(".#.", ".#.", ".##"),
+                    new Figure("...", "###", "#.."),
+                    new Figure("##", ".#", ".#"),
+                    new Figure("..#", "###")
+            },
+            new Figure[]{
+                    new Figure(".#", ".#", "##"),
+                    new Figure("#..", "###"),
+                    new Figure(".##", ".#.", ".#."),
+                    new Figure("...", "###", "..#")
+            },
+            new Figure[]{
+                    new Figure("##", "##")
+            }
+    };
+
+    final int width;
+    final int height;
+    // First occupied column and one past the last occupied one.
+    final int xMin;
+    final int xMax;
+    final int[] cellX;
+    final int[] cellY;
+    // Lowest occupied row of every column, -1 for empty columns.
+    final int[] bottom;
+    // Rows as bit masks, bit x standing for column x.
+    final int[] rowMasks;
+    // Pairs of (dx, dy) tried in order when turning into this state.
+    final int[] kicks;
+    private final boolean[][] cells;
+
+    private Figure(String... columns) {
+        width = columns.length;
+        height = columns[0].length();
+        cells = new boolean[width][height];
+        bottom = new int[width];
+        rowMasks = new int[height];
+        int count = 0;
+        int left = width;
+        int right = 0;
+        for (int x = 0; x < width; x++) {
+            bottom[x] = -1;
+            for (int y = 0; y < height; y++) {
+                if (columns[x].charAt(y) == '#') {
+                    cells[x][y] = true;
+                    bottom[x] = y;
+                    rowMasks[y] |= 1 << x;
+                    left = Math.min(left, x);
+                    right = x + 1;
+                    count++;
+                }
+            }
+        }
+        xMin = left;
+        xMax = right;
+        cellX = new int[count];
+        cellY = new int[count];
+        for (int x = 0, i = 0; x < width; x++)
+            for (int y = 0; y < height; y++)
+                if (cells[x][y]) {
+                    cellX[i] = x;
+                    cellY[i++] = y;
+                }
+        // Figures wider than three cells may need two steps away from the wall.
+        kicks = right - left > 3 || height > 3
+                ? new int[]{0, 0, -1, 0, 1, 0, -2, 0, 2, 0}
+                : new int[]{0, 0, -1, 0, 1, 0};
+    }
+
+    public static Figure get(int type, int turn) {
+        return FIGURES[type][turn];
+    }
+
+    public static int getTypeCount() {
+        return FIGURES.length;
+    }
+
+    public static int getTurnCount(int type) {
+        return FIGURES[type].length;
+    }
+
+    public static int getMaxWidth() {
+        int result = 0;
+        for (Figure[] turns : FIGURES)
+            for (Figure figure : turns)
+                result = Math.max(result, figure.width);
+        return result;
+    }
+
+    public static int getMaxHeight() {
+        int result = 0;
+        for (Figure[] turns : FIGURES)
+            for (Figure figure : turns)
+                result = Math.max(result, figure.height);
+        return result;
+    }
+
+    public boolean isPart(int x, int y) {
+        return cells[x][y];
+    }
+
+    public int getWidth() {
+        return width;
+    }
+
+    public int getHeight() {
+        return height;
+    }
+
+    public int getLeft() {
+        return xMin;
+    }
+
+    public int getRight() {
+        return xMax;
+    }
+
+    // Lowest occupied row of the column, -1 for an empty one.
+    public int getBottom(int x) {
+        return bottom[x];
+    }
+
+    public int getCellCount() {
+        return cellX.length;
+    }
+
+    public int getCellX(int i) {
+        return cellX[i];
+    }
+
+    public int getCellY(int i) {
+        return cellY[i];
+    }
+
+    public int getKickCount() {
+        return kicks.length / 2;
+    }
+
+    public int getKickX(int i) {
+        return kicks[2 * i];
+    }
+
+    public int getKickY(int i) {
+        return kicks[2 * i + 1];
+    }
+}
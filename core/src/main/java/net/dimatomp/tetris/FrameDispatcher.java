@@ -0,0 +1,87 @@
+package net.dimatomp.tetris;
+
+// Collects the events of a model between frames and hands them to the listeners as one ChangeSet, so a
+// frame with a gravity step and a few moves costs the listeners one call rather than one per event.
+// Register it on the model; events and dispatch() stay on the thread that plays it. Listeners may be
+// added and removed from any thread, a dispatch already running still sees the ones it started with.
+public final class FrameDispatcher implements TetrisModel.Callback {
+    private final TetrisModel model;
+    private final ChangeSet changes = new ChangeSet();
+    private final Area removedArea = new Area();
+    // Copied on every change.
+    private volatile Listener[] listeners = new Listener[0];
+
+    public FrameDispatcher(TetrisModel model) {
+        this.model = model;
+    }
+
+    public TetrisModel getModel() {
+        return model;
+    }
+
+    public synchronized void addListener(Listener listener) {
+        for (Listener added : listeners)
+            if (added == listener)
+                return;
+        Listener[] result = new Listener[listeners.length + 1];
+        System.arraycopy(listeners, 0, result, 0, listeners.length);
+        result[listeners.length] = listener;
+        listeners = result;
+    }
+
+    public synchronized void removeListener(Listener listener) {
+        for (int i = 0; i < listeners.length; i++) {
+            if (listeners[i] == listener) {
+                Listener[] result = new Listener[listeners.length - 1];
+                System.arraycopy(listeners, 0, result, 0, i);
+                System.arraycopy(listeners, i + 1, result, i, result.length - i);
+                listeners = result;
+                return;
+            }
+        }
+    }
+
+    // Delivers what happened since the last call, true when anything did.
+    public boolean dispatch() {
+        if (changes.isEmpty())
+            return false;
+        changes.capture(model);
+        for (Listener listener : listeners)
+            listener.onChanges(changes);
+        changes.clear();
+        return true;
+    }
+
+    @Override
+    public void onLinesRemoved(int... pos) {
+        changes.countEvent();
+        for (int y : pos)
+            changes.addRemovedLine(y);
+        // The model marked just the cells that the removal changed, not every row above it.
+        DirtyRegion region = model.getDirtyRegion();
+        if (!region.isEmpty()) {
+            region.getBounds(removedArea);
+            changes.damage(removedArea.left, removedArea.top, removedArea.right, removedArea.bottom);
+        }
+    }
+
+    @Override
+    public void onFigureMoved(Area oldArea) {
+        changes.countEvent();
+        changes.damage(oldArea.left, oldArea.top, oldArea.right, oldArea.bottom);
+        changes.damage(model.getX(), model.getY(), model.getX() + model.getFigureWidth(),
+                model.getY() + model.getFigureHeight());
+    }
+
+    // The board is emptied.
+    @Override
+    public void onGameOver() {
+        changes.countEvent();
+        changes.setGameOver();
+        changes.damage(0, 0, model.getWidth(), model.getHeight());
+    }
+
+    public interface Listener {
+        void onChanges(ChangeSet changes);
+    }
+}
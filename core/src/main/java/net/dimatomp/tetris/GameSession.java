@@ -0,0 +1,136 @@
+package net.dimatomp.tetris;
+
+import net.dimatomp.tetris.metrics.LatencyHistogram;
+import net.dimatomp.tetris.metrics.Metrics;
+
+// The rules around the model: gravity counted in ticks, commands applied between ticks and new figures
+// drawn from the model's random. Nothing here reads a clock, whoever calls tick() sets the pace:
+// the game loop once per TICK_NANOS on the device, ReplayEngine as fast as it can.
+// Every command is recorded with its tick, so the game can be played again exactly.
+public class GameSession implements TetrisModel.Callback {
+    public static final long TICK_NANOS = 50000000L;
+    public static final int MOVE_LEFT = 0;
+    public static final int MOVE_RIGHT = 1;
+    public static final int TURN_RIGHT = 2;
+    public static final int SPEED_UP = 3;
+    public static final int HARD_DROP = 4;
+    static final int COMMAND_COUNT = 5;
+    // The figure falls every 500 ms, or on every tick once sped up until it lands.
+    private static final int GRAVITY_TICKS = 10;
+    private static final LatencyHistogram gravityTime = Metrics.histogram("session.gravity");
+
+    private final TetrisModel model;
+    private final InputLog log;
+    private long tick;
+    private int gravityTicks = GRAVITY_TICKS;
+    private int untilGravity = GRAVITY_TICKS;
+    private boolean over;
+
+    // The log starts from the current state of the model, which may be a game restored halfway.
+    public GameSession(TetrisModel model) {
+        this(model, true);
+    }
+
+    // Without recording the memory of a session stays the same however long it runs.
+    public GameSession(TetrisModel model, boolean recording) {
+        this.model = model;
+        this.log = recording ? new InputLog(StateCodec.encode(model)) : null;
+        model.registerCallback(this);
+    }
+
+    public static TetrisModel newModel(int width, int height, long seed) {
+        TetrisModel model = new TetrisModel(width, height, seed);
+        int type = model.getRandom().nextInt(TetrisModel.getFiguresCount());
+        model.placeNewFigure(type, model.getRandom().nextInt(TetrisModel.getPosCount(type)));
+        return model;
+    }
+
+    public TetrisModel getModel() {
+        return model;
+    }
+
+    public long getTick() {
+        return tick;
+    }
+
+    public boolean isOver() {
+        return over;
+    }
+
+    public void tick() {
+        tick++;
+        if (over || --untilGravity > 0)
+            return;
+        boolean timed = Metrics.isModelTiming();
+        long start = timed ? gravityTime.start() : 0;
+        if (!model.moveY(1))
+            lock();
+        untilGravity = gravityTicks;
+        if (timed)
+            gravityTime.stop(start);
+    }
+
+    private void lock() {
+        gravityTicks = GRAVITY_TICKS;
+        untilGravity = GRAVITY_TICKS;
+        int type = model.getRandom().nextInt(TetrisModel.getFiguresCount());
+        model.throwFigure(type, model.getRandom().nextInt(TetrisModel.getPosCount(type)));
+    }
+
+    public void advanceTo(long target) {
+        while (tick < target)
+            tick();
+    }
+
+    public void input(int command) {
+        if (over)
+            return;
+        if (log != null)
+            log.append(tick, command);
+        switch (command) {
+            case MOVE_LEFT:
+                model.moveX(-1);
+                break;
+            case MOVE_RIGHT:
+                model.moveX(1);
+                break;
+            case TURN_RIGHT:
+                model.turnClockwise(-1);
+                break;
+            case SPEED_UP:
+                if (gravityTicks != 1) {
+                    gravityTicks = 1;
+                    untilGravity = 1;
+                }
+                break;
+            case HARD_DROP:
+                int distance = model.getDropY() - model.getY();
+                if (distance != 0)
+                    model.moveY(distance);
+                lock();
+                break;
+            default:
+                throw new IllegalArgumentException("Unknown command " + command);
+        }
+    }
+
+    // The commands so far, closed with the current tick and state hash for ReplayEngine to check.
+    public byte[] record() {
+        if (log == null)
+            throw new IllegalStateException("Session is not recording");
+        return log.encode(tick, StateCodec.hash(model));
+    }
+
+    @Override
+    public void onLinesRemoved(int... pos) {
+    }
+
+    @Override
+    public void onFigureMoved(Area oldArea) {
+    }
+
+    @Override
+    public void onGameOver() {
+        over = true;
+    }
+}
@@ -0,0 +1,100 @@
+package net.dimatomp.tetris;
+
+import java.util.Arrays;
+
+// Commands of one game stamped with their ticks, after the state the game started from.
+// Layout: magic, version, varint length and bytes of the initial state from StateCodec, varint command
+// count, then per command the varint ticks since the previous one and the command byte, then the varint
+// ticks from the last command to the end and 8 bytes of the final state hash.
+public final class InputLog {
+    private static final int MAGIC = 0x52;
+    private static final int VERSION = 1;
+
+    private final byte[] initialState;
+    private long[] ticks = new long[64];
+    private byte[] commands = new byte[64];
+    private int size;
+    private long endTick;
+    private long stateHash;
+
+    InputLog(byte[] initialState) {
+        this.initialState = initialState;
+    }
+
+    void append(long tick, int command) {
+        if (size == ticks.length) {
+            ticks = Arrays.copyOf(ticks, size * 2);
+            commands = Arrays.copyOf(commands, size * 2);
+        }
+        ticks[size] = tick;
+        commands[size++] = (byte) command;
+    }
+
+    byte[] encode(long endTick, long stateHash) {
+        StateCodec.Writer out = new StateCodec.Writer(initialState.length + 2 * size + 24);
+        out.writeByte(MAGIC);
+        out.writeByte(VERSION);
+        out.writeVarInt(initialState.length);
+        for (byte b : initialState)
+            out.writeByte(b);
+        out.writeVarInt(size);
+        long previous = 0;
+        for (int i = 0; i < size; i++) {
+            out.writeVarInt((int) (ticks[i] - previous));
+            out.writeByte(commands[i]);
+            previous = ticks[i];
+        }
+        out.writeVarInt((int) (endTick - previous));
+        out.writeLong(stateHash);
+        return out.toByteArray();
+    }
+
+    public static InputLog decode(byte[] data) {
+        StateCodec.Reader in = new StateCodec.Reader(data);
+        if (in.readByte() != MAGIC)
+            throw new IllegalArgumentException("Not an input log");
+        int version = in.readByte();
+        if (version != VERSION)
+            throw new IllegalArgumentException("Unsupported input log version " + version);
+        byte[] initialState = new byte[in.readVarInt()];
+        for (int i = 0; i < initialState.length; i++)
+            initialState[i] = (byte) in.readByte();
+        InputLog result = new InputLog(initialState);
+        int count = in.readVarInt();
+        long tick = 0;
+        for (int i = 0; i < count; i++) {
+            tick += in.readVarInt();
+            int command = in.readByte();
+            if (command >= GameSession.COMMAND_COUNT)
+                throw new IllegalArgumentException("Unknown command " + command);
+            result.append(tick, command);
+        }
+        result.endTick = tick + in.readVarInt();
+        result.stateHash = in.readLong();
+        return result;
+    }
+
+    public byte[] getInitialState() {
+        return initialState.clone();
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public long getTick(int index) {
+        return ticks[index];
+    }
+
+    public int getCommand(int index) {
+        return commands[index];
+    }
+
+    public long getEndTick() {
+        return endTick;
+    }
+
+    public long getStateHash() {
+        return stateHash;
+    }
+}
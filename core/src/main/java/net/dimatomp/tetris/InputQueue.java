@@ -0,0 +1,57 @@
+package net.dimatomp.tetris;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+// Timestamped events from one producer thread to one consumer thread. Neither side locks or allocates;
+// each only writes its own index, published with an ordered store.
+public final class InputQueue {
+    private final long[] times;
+    private final int[] events;
+    private final int mask;
+    // Next slot to read, written by the consumer only.
+    private final AtomicLong head = new AtomicLong();
+    // Next slot to write, written by the producer only.
+    private final AtomicLong tail = new AtomicLong();
+
+    // The capacity is rounded up to a power of two.
+    public InputQueue(int capacity) {
+        int size = Integer.highestOneBit(Math.max(1, capacity - 1)) << 1;
+        times = new long[size];
+        events = new int[size];
+        mask = size - 1;
+    }
+
+    // Producer: false when the queue is full and the event was dropped.
+    public boolean offer(int event, long nanos) {
+        long t = tail.get();
+        if (t - head.get() == times.length)
+            return false;
+        int index = (int) t & mask;
+        times[index] = nanos;
+        events[index] = event;
+        tail.lazySet(t + 1);
+        return true;
+    }
+
+    // Consumer: the peek methods must only be called while this is false.
+    public boolean isEmpty() {
+        return head.get() == tail.get();
+    }
+
+    public int peekEvent() {
+        return events[(int) head.get() & mask];
+    }
+
+    public long peekNanos() {
+        return times[(int) head.get() & mask];
+    }
+
+    public void remove() {
+        head.lazySet(head.get() + 1);
+    }
+
+    // Consumer: drops everything offered so far.
+    public void clear() {
+        head.lazySet(tail.get());
+    }
+}
@@ -0,0 +1,77 @@
+package net.dimatomp.tetris;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+// Plays input logs again without any clock, ticks follow each other as fast as the model goes.
+public final class ReplayEngine {
+    private ReplayEngine() {
+    }
+
+    // The session at the end tick of the log, started from the state the log was recorded on.
+    public static GameSession replay(InputLog log) {
+        GameSession session = new GameSession(StateCodec.decode(log.getInitialState()));
+        for (int i = 0; i < log.size(); i++) {
+            session.advanceTo(log.getTick(i));
+            session.input(log.getCommand(i));
+        }
+        session.advanceTo(log.getEndTick());
+        return session;
+    }
+
+    public static boolean verify(InputLog log) {
+        return StateCodec.hash(replay(log).getModel()) == log.getStateHash();
+    }
+
+    public static void main(String[] args) throws IOException {
+        List<File> files = new ArrayList<>();
+        for (String arg : args)
+            collect(new File(arg), files);
+        int failed = 0;
+        long start = System.nanoTime();
+        for (File file : files) {
+            String problem;
+            try {
+                problem = verify(InputLog.decode(read(file))) ? null : "final state differs";
+            } catch (IllegalArgumentException e) {
+                problem = e.getMessage();
+            }
+            if (problem != null) {
+                System.out.println(file + ": " + problem);
+                failed++;
+            }
+        }
+        System.out.println(String.format(Locale.US, "%d replays, %d failed, %.2f s",
+                files.size(), failed, (System.nanoTime() - start) / 1e9));
+        if (failed != 0)
+            System.exit(1);
+    }
+
+    private static void collect(File file, List<File> result) {
+        File[] children = file.listFiles();
+        if (children == null) {
+            result.add(file);
+            return;
+        }
+        for (File child : children)
+            collect(child, result);
+    }
+
+    private static byte[] read(File file) throws IOException {
+        try (FileInputStream in = new FileInputStream(file)) {
+            byte[] data = new byte[(int) file.length()];
+            int read = 0;
+            while (read < data.length) {
+                int count = in.read(data, read, data.length - read);
+                if (count < 0)
+                    break;
+                read += count;
+            }
+            return data;
+        }
+    }
+}
@@ -0,0 +1,201 @@
+package net.dimatomp.tetris;
+
+import java.util.Arrays;
+
+// Versioned binary form of a model: field, figure, score, lock count and random state.
+// Layout: magic, version, varint width and height, figure type and turn, zigzag varint position,
+// varint score, 8 bytes of lock count, 8 bytes of random state, varint count of empty top rows, then
+// the remaining rows as width bits each, least significant bit first. Version 1 had no lock count,
+// its games decode with 0.
+public final class StateCodec {
+    private static final int MAGIC = 0x54;
+    private static final int VERSION = 2;
+    // Far beyond any real field, keeps a corrupt size from taking all the memory.
+    private static final int MAX_SIDE = 1 << 16;
+
+    private StateCodec() {
+    }
+
+    public static byte[] encode(TetrisModel model) {
+        Board board = model.getBoard();
+        int emptyRows = 0;
+        while (emptyRows < board.getHeight() && board.isRowEmpty(emptyRows))
+            emptyRows++;
+        long bits = (long) board.getWidth() * (board.getHeight() - emptyRows);
+        Writer out = new Writer(56 + (int) ((bits + 7) / 8));
+        out.writeByte(MAGIC);
+        out.writeByte(VERSION);
+        out.writeVarInt(board.getWidth());
+        out.writeVarInt(board.getHeight());
+        out.writeByte(model.getFigureType());
+        out.writeByte(model.getTurnDegree());
+        out.writeVarInt(zigzag(model.getX()));
+        out.writeVarInt(zigzag(model.getY()));
+        out.writeVarInt(model.getScore());
+        out.writeLong(model.getLockCount());
+        out.writeLong(model.getRandom().getState());
+        out.writeVarInt(emptyRows);
+        for (int y = emptyRows; y < board.getHeight(); y++)
+            for (int x = 0; x < board.getWidth(); x++)
+                out.writeBit(board.isOccupied(x, y));
+        return out.toByteArray();
+    }
+
+    // Anything that is not a game encode() could have written throws IllegalArgumentException.
+    public static TetrisModel decode(byte[] data) {
+        Reader in = new Reader(data);
+        if (in.readByte() != MAGIC)
+            throw new IllegalArgumentException("Not a saved game");
+        int version = in.readByte();
+        if (version != 1 && version != VERSION)
+            throw new IllegalArgumentException("Unsupported saved game version " + version);
+        int width = in.readVarInt();
+        int height = in.readVarInt();
+        if (width < TetrisModel.MIN_WIDTH || height < TetrisModel.MIN_HEIGHT || width > MAX_SIDE || height > MAX_SIDE)
+            throw new IllegalArgumentException("Bad field size " + width + "x" + height);
+        int type = in.readByte();
+        int degree = in.readByte();
+        if (type >= TetrisModel.getFiguresCount() || degree >= TetrisModel.getPosCount(type))
+            throw new IllegalArgumentException("Bad figure " + type + "/" + degree);
+        TetrisModel model = new TetrisModel(width, height);
+        model.setFigureType(type);
+        model.setTurnDegree(degree);
+        model.setX(unzigzag(in.readVarInt()));
+        model.setY(unzigzag(in.readVarInt()));
+        Figure figure = model.getFigure();
+        if (model.getX() + figure.xMin < 0 || model.getX() + figure.xMax > width
+                || model.getY() < -figure.height || model.getY() > height)
+            throw new IllegalArgumentException("Figure out of the field");
+        int score = in.readVarInt();
+        if (score < 0)
+            throw new IllegalArgumentException("Bad score " + score);
+        model.setScore(score);
+        long lockCount = version == 1 ? 0 : in.readLong();
+        if (lockCount < 0)
+            throw new IllegalArgumentException("Bad lock count " + lockCount);
+        model.setLockCount(lockCount);
+        model.getRandom().setState(in.readLong());
+        Board board = model.getBoard();
+        int emptyRows = in.readVarInt();
+        if (emptyRows < 0 || emptyRows > height)
+            throw new IllegalArgumentException("Bad empty row count " + emptyRows);
+        for (int y = emptyRows; y < height; y++)
+            for (int x = 0; x < width; x++)
+                if (in.readBit())
+                    board.setOccupied(x, y, true);
+        if (!in.isAtEnd())
+            throw new IllegalArgumentException("Trailing data after the saved game");
+        model.getDirtyRegion().markAll();
+        return model;
+    }
+
+    // FNV-1a over the encoded form, equal for models that would be saved the same way.
+    public static long hash(TetrisModel model) {
+        long result = 0xCBF29CE484222325L;
+        for (byte b : encode(model)) {
+            result ^= b & 0xFF;
+            result *= 0x100000001B3L;
+        }
+        return result;
+    }
+
+    private static int zigzag(int value) {
+        return (value << 1) ^ (value >> 31);
+    }
+
+    private static int unzigzag(int value) {
+        return (value >>> 1) ^ -(value & 1);
+    }
+
+    static final class Writer {
+        private byte[] data;
+        private int size;
+        private int bitCount;
+
+        Writer(int capacity) {
+            data = new byte[capacity];
+        }
+
+        void writeByte(int value) {
+            if (size == data.length)
+                data = Arrays.copyOf(data, size * 2);
+            data[size++] = (byte) value;
+            bitCount = 0;
+        }
+
+        void writeVarInt(int value) {
+            while ((value & ~0x7F) != 0) {
+                writeByte((value & 0x7F) | 0x80);
+                value >>>= 7;
+            }
+            writeByte(value);
+        }
+
+        void writeLong(long value) {
+            for (int i = 0; i < 8; i++)
+                writeByte((int) (value >>> (8 * i)));
+        }
+
+        void writeBit(boolean value) {
+            if (bitCount == 0 || bitCount == 8) {
+                writeByte(0);
+                bitCount = 0;
+            }
+            if (value)
+                data[size - 1] |= 1 << bitCount;
+            bitCount++;
+        }
+
+        byte[] toByteArray() {
+            return Arrays.copyOf(data, size);
+        }
+    }
+
+    static final class Reader {
+        private final byte[] data;
+        private int position;
+        private int bitCount;
+
+        Reader(byte[] data) {
+            this.data = data;
+        }
+
+        int readByte() {
+            if (position == data.length)
+                throw new IllegalArgumentException("Saved game is truncated");
+            bitCount = 0;
+            return data[position++] & 0xFF;
+        }
+
+        int readVarInt() {
+            int result = 0;
+            for (int shift = 0; shift < 35; shift += 7) {
+                int b = readByte();
+                result |= (b & 0x7F) << shift;
+                if ((b & 0x80) == 0)
+                    return result;
+            }
+            throw new IllegalArgumentException("Malformed saved game");
+        }
+
+        // The last byte may hold bits past the last cell, they are padding.
+        boolean isAtEnd() {
+            return position == data.length;
+        }
+
+        long readLong() {
+            long result = 0;
+            for (int i = 0; i < 8; i++)
+                result |= (long) readByte() << (8 * i);
+            return result;
+        }
+
+        boolean readBit() {
+            if (bitCount == 0 || bitCount == 8) {
+                readByte();
+                bitCount = 0;
+            }
+            return (data[position - 1] >>> bitCount++ & 1) != 0;
+        }
+    }
+}
@@ -0,0 +1,390 @@
+package net.dimatomp.tetris;
+
+import net.dimatomp.tetris.metrics.Counter;
+import net.dimatomp.tetris.metrics.LatencyHistogram;
+import net.dimatomp.tetris.metrics.Metrics;
+
+public class TetrisModel {
+    // The smallest field that holds every figure in every turn.
+    public static final int MIN_WIDTH = Figure.getMaxWidth();
+    public static final int MIN_HEIGHT = Figure.getMaxHeight();
+    private static final LatencyHistogram moveYTime = Metrics.histogram("model.moveY");
+    private static final LatencyHistogram throwTime = Metrics.histogram("model.throwFigure");
+    private static final Counter linesRemoved = Metrics.counter("model.linesRemoved");
+    // Tells throwFigure() to draw the position of the new figure from the random.
+    private static final int RANDOM_X = Integer.MIN_VALUE;
+    // Copied on every change, so a callback may unregister itself or others while being notified.
+    private Callback[] callbacks = new Callback[0];
+    private int figureType;
+    private int turnDegree;
+    private int figurePosX;
+    private int figurePosY;
+    private final Board board;
+    private final GameRandom random;
+    private int score;
+    private long lockCount;
+    // Handed to the callbacks, which must not keep them: both are overwritten by the next event.
+    private final Area oldArea = new Area();
+    private final int[][] removedLines;
+    private final DirtyRegion dirtyRegion;
+
+    public TetrisModel(int fieldWidth, int fieldHeight) {
+        this(fieldWidth, fieldHeight, System.nanoTime());
+    }
+
+    public TetrisModel(int fieldWidth, int fieldHeight, long seed) {
+        if (fieldWidth < MIN_WIDTH || fieldHeight < MIN_HEIGHT)
+            throw new IllegalArgumentException("Field " + fieldWidth + "x" + fieldHeight + " is smaller than "
+                    + MIN_WIDTH + "x" + MIN_HEIGHT);
+        this.board = new Board(fieldWidth, fieldHeight);
+        this.random = new GameRandom(seed);
+        this.dirtyRegion = new DirtyRegion(fieldWidth, fieldHeight);
+        // One exactly sized array for every possible number of lines removed at once.
+        removedLines = new int[Figure.getMaxHeight() + 1][];
+        for (int i = 0; i < removedLines.length; i++)
+            removedLines[i] = new int[i];
+    }
+
+    public static int getFiguresCount() {
+        return Figure.getTypeCount();
+    }
+
+    public static int getPosCount(int figType) {
+        return Figure.getTurnCount(figType);
+    }
+
+    public void registerCallback(Callback callback) {
+        for (Callback registered : callbacks)
+            if (registered == callback)
+                return;
+        Callback[] result = new Callback[callbacks.length + 1];
+        System.arraycopy(callbacks, 0, result, 0, callbacks.length);
+        result[callbacks.length] = callback;
+        callbacks = result;
+    }
+
+    public void unregisterCallback(Callback callback) {
+        for (int i = 0; i < callbacks.length; i++) {
+            if (callbacks[i] == callback) {
+                Callback[] result = new Callback[callbacks.length - 1];
+                System.arraycopy(callbacks, 0, result, 0, i);
+                System.arraycopy(callbacks, i + 1, result, i, result.length - i);
+                callbacks = result;
+                return;
+            }
+        }
+    }
+
+    // Cells changed since the renderer last cleared it, covering figure moves, locks and removed lines.
+    public DirtyRegion getDirtyRegion() {
+        return dirtyRegion;
+    }
+
+    private void markFigure() {
+        markFigure(getFigure(), getX(), getY());
+    }
+
+    private void markFigure(Figure figure, int x, int y) {
+        for (int i = 0; i < figure.cellX.length; i++)
+            dirtyRegion.mark(x + figure.cellX[i], y + figure.cellY[i]);
+    }
+
+    private void notifyFigureMoved() {
+        for (Callback callback : callbacks)
+            callback.onFigureMoved(oldArea);
+    }
+
+    private void notifyGameOver() {
+        for (Callback callback : callbacks)
+            callback.onGameOver();
+    }
+
+    Board getBoard() {
+        return board;
+    }
+
+    public Figure getFigure() {
+        return Figure.get(figureType, turnDegree);
+    }
+
+    public Board copyBoard() {
+        return board.copy();
+    }
+
+    // The state alone, without callbacks, for another thread to save while this one plays on.
+    public TetrisModel copy() {
+        TetrisModel result = new TetrisModel(getWidth(), getHeight(), 0);
+        result.setBoard(board);
+        result.figureType = figureType;
+        result.turnDegree = turnDegree;
+        result.figurePosX = figurePosX;
+        result.figurePosY = figurePosY;
+        result.score = score;
+        result.lockCount = lockCount;
+        result.random.setState(random.getState());
+        return result;
+    }
+
+    // Places new figures and is meant to pick them as well, so that a saved game continues the same way.
+    public GameRandom getRandom() {
+        return random;
+    }
+
+    // Number of removed lines.
+    public int getScore() {
+        return score;
+    }
+
+    public void setScore(int score) {
+        this.score = score;
+    }
+
+    // Zobrist hash of the settled cells and the falling figure. The board keeps its part up to date on every
+    // settle and removed line, the figure's is mixed from its pose, so reading it never scans the field.
+    // A cheap fingerprint of the position, without the score and the random.
+    public long getHash() {
+        long pose = ((long) figureType << 56 | (long) turnDegree << 48)
+                ^ ((long) (figurePosX & 0xFFFFFF) << 24) ^ (figurePosY & 0xFFFFFF);
+        return board.getHash() ^ Board.mix(pose ^ 0x5851F42D4C957F2DL);
+    }
+
+    // Figures thrown into the field so far, including the one that ended the game.
+    public long getLockCount() {
+        return lockCount;
+    }
+
+    public void setLockCount(long lockCount) {
+        this.lockCount = lockCount;
+    }
+
+    public int getFigureType() {
+        return figureType;
+    }
+
+    public void setFigureType(int figureType) {
+        this.figureType = figureType;
+    }
+
+    public int getTurnDegree() {
+        return turnDegree;
+    }
+
+    public void setTurnDegree(int turnDegree) {
+        this.turnDegree = (turnDegree + getPosCount(figureType)) % getPosCount(figureType);
+    }
+
+    public int getWidth() {
+        return board.getWidth();
+    }
+
+    public int getHeight() {
+        return board.getHeight();
+    }
+
+    public boolean isOccupied(int x, int y) {
+        return board.isOccupied(x, y);
+    }
+
+    public void setOccupied(int x, int y, boolean value) {
+        board.setOccupied(x, y, value);
+        dirtyRegion.mark(x, y);
+    }
+
+    // Replaces the field with a copy of one of the same size, e.g. taken with copyBoard().
+    public void setBoard(Board board) {
+        this.board.copyFrom(board);
+        dirtyRegion.markAll();
+    }
+
+    public int getX() {
+        return figurePosX;
+    }
+
+    public void setX(int x) {
+        figurePosX = x;
+    }
+
+    public int getY() {
+        return figurePosY;
+    }
+
+    public void setY(int y) {
+        figurePosY = y;
+    }
+
+    public int getFigureWidth() {
+        return getFigure().width;
+    }
+
+    public int getFigureHeight() {
+        return getFigure().height;
+    }
+
+    // Row the figure lands on if dropped now, for hard drops and the ghost figure.
+    public int getDropY() {
+        return board.dropY(getFigure(), figurePosX, figurePosY);
+    }
+
+    public boolean isFigurePart(int x, int y) {
+        return getFigure().isPart(x, y);
+    }
+
+    public boolean moveX(int dx) {
+        setX(getX() + dx);
+        if (!isValidState()) {
+            setX(getX() - dx);
+            return false;
+        }
+        markFigure();
+        markFigure(getFigure(), getX() - dx, getY());
+        oldArea.set(getX() - dx, getY(), getX() - dx + getFigureWidth(), getY() + getFigureHeight());
+        notifyFigureMoved();
+        return true;
+    }
+
+    public boolean moveY(int dy) {
+        if (!Metrics.isModelTiming())
+            return moveYUntimed(dy);
+        long start = moveYTime.start();
+        try {
+            return moveYUntimed(dy);
+        } finally {
+            moveYTime.stop(start);
+        }
+    }
+
+    private boolean moveYUntimed(int dy) {
+        setY(getY() + dy);
+        if (!isValidState()) {
+            setY(getY() - dy);
+            return false;
+        }
+        markFigure();
+        markFigure(getFigure(), getX(), getY() - dy);
+        oldArea.set(getX(), getY() - dy, getX() + getFigureWidth(), getY() - dy + getFigureHeight());
+        notifyFigureMoved();
+        return true;
+    }
+
+    private boolean isValidState() {
+        return !board.collides(getFigure(), figurePosX, figurePosY);
+    }
+
+    public boolean turnClockwise(int rot) {
+        Figure oldFigure = getFigure();
+        int oldX = getX();
+        int oldY = getY();
+        setTurnDegree(getTurnDegree() + rot);
+        Figure figure = getFigure();
+        int kick = board.findKick(figure, getX(), getY());
+        if (kick < 0) {
+            setTurnDegree(getTurnDegree() - rot);
+            return false;
+        }
+        setX(getX() + figure.getKickX(kick));
+        setY(getY() + figure.getKickY(kick));
+        markFigure(oldFigure, oldX, oldY);
+        markFigure();
+        oldArea.set(oldX, oldY, oldX + oldFigure.width, oldY + oldFigure.height);
+        notifyFigureMoved();
+        return true;
+    }
+
+    public void throwFigure(int figType, int degree) {
+        throwFigure(figType, degree, RANDOM_X);
+    }
+
+    // Places the new figure at column x rather than a random one, for DeltaDecoder.
+    void throwFigure(int figType, int degree, int x) {
+        if (!Metrics.isModelTiming()) {
+            throwFigureUntimed(figType, degree, x);
+            return;
+        }
+        long start = throwTime.start();
+        try {
+            throwFigureUntimed(figType, degree, x);
+        } finally {
+            throwTime.stop(start);
+        }
+    }
+
+    private void throwFigureUntimed(int figType, int degree, int x) {
+        lockCount++;
+        getFigureRect(oldArea);
+        Figure figure = getFigure();
+        int[] masks = figure.rowMasks;
+        for (int y = Math.min(-getY(), masks.length) - 1; y >= 0; y--) {
+            if (masks[y] != 0) {
+                board.clear();
+                dirtyRegion.markAll();
+                notifyGameOver();
+                return;
+            }
+        }
+        board.stamp(figure, getX(), getY());
+        markFigure();
+        // Removed rows are collected in the largest buffer first, then copied into the exactly sized one.
+        int[] buffer = removedLines[removedLines.length - 1];
+        int count = 0;
+        for (int y = Math.max(0, -getY()); y < masks.length && y + getY() < getHeight(); y++) {
+            if (masks[y] != 0 && board.isFull(y + getY())) {
+                board.markRemoval(y + getY(), dirtyRegion);
+                board.removeRow(y + getY());
+                buffer[count++] = y + getY();
+            }
+        }
+        score += count;
+        if (count != 0)
+            linesRemoved.add(count);
+        int[] result = removedLines[count];
+        if (result != buffer)
+            System.arraycopy(buffer, 0, result, 0, count);
+        if (x == RANDOM_X)
+            placeNewFigure(figType, degree);
+        else
+            placeNewFigure(figType, degree, x);
+        if (!isValidState()) {
+            notifyGameOver();
+            return;
+        }
+        for (Callback callback : callbacks) {
+            if (count != 0)
+                callback.onLinesRemoved(result);
+            callback.onFigureMoved(oldArea);
+        }
+    }
+
+    public void placeNewFigure(int figType, int degree) {
+        setFigureType(figType);
+        setTurnDegree(degree);
+        Figure figure = getFigure();
+        // Every column from -xMin to getWidth() - xMax, both included.
+        int interval = getWidth() + figure.xMin - figure.xMax + 1;
+        placeNewFigure(figType, degree, random.nextInt(interval) - figure.xMin);
+    }
+
+    private void placeNewFigure(int figType, int degree, int x) {
+        setFigureType(figType);
+        setTurnDegree(degree);
+        figurePosX = x;
+        figurePosY = -getFigure().height + 1;
+        markFigure();
+    }
+
+    public Area getFigureRect() {
+        return getFigureRect(new Area());
+    }
+
+    public Area getFigureRect(Area result) {
+        result.set(getX(), getY(), getX() + getFigureWidth(), getY() + getFigureHeight());
+        return result;
+    }
+
+    public interface Callback {
+        void onLinesRemoved(int... pos);
+
+        void onFigureMoved(Area oldArea);
+
+        void onGameOver();
+    }
+}
@@ -0,0 +1,41 @@
+package net.dimatomp.tetris.bot;
+
+import net.dimatomp.tetris.TetrisModel;
+
+// Plays through the ordinary move API, the same calls the buttons make.
+public class Bot {
+    private final PlacementSearch search;
+
+    public Bot(PlacementSearch search) {
+        this.search = search;
+    }
+
+    public Placement plan(TetrisModel model, int[] preview, long budgetNanos) {
+        return search.find(model, preview, budgetNanos);
+    }
+
+    // Makes one move towards the placement, false once only the drop is left.
+    public boolean step(TetrisModel model, Placement target, int turnsMade) {
+        if (turnsMade < Math.abs(target.getTurns()))
+            return model.turnClockwise(Integer.signum(target.getTurns()));
+        if (model.getX() != target.getX())
+            return model.moveX(Integer.signum(target.getX() - model.getX()));
+        return false;
+    }
+
+    // Plans, moves the figure into place and drops it until it rests. The caller throws the next figure,
+    // as gravity would. Returns null when the figure has nowhere to go.
+    public Placement play(TetrisModel model, int[] preview, long budgetNanos) {
+        Placement target = plan(model, preview, budgetNanos);
+        if (target == null)
+            return null;
+        int turns = 0;
+        while (step(model, target, turns))
+            if (turns < Math.abs(target.getTurns()))
+                turns++;
+        int distance = model.getDropY() - model.getY();
+        if (distance != 0)
+            model.moveY(distance);
+        return target;
+    }
+}
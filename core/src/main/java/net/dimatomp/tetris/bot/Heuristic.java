@@ -0,0 +1,43 @@
+package net.dimatomp.tetris.bot;
+
+import net.dimatomp.tetris.Board;
+
+// Linear score of a board, higher is better. Features are aggregate column height,
+// holes (empty cells under the top of their column), bumpiness (height steps between
+// neighbouring columns) and the number of lines cleared on the way to the board.
+public class Heuristic {
+    private final double heightWeight;
+    private final double linesWeight;
+    private final double holesWeight;
+    private final double bumpinessWeight;
+
+    // Weights tuned by El-Tetris style self-play on a 10 wide board, a reasonable start for others.
+    public Heuristic() {
+        this(-0.510066, 0.760666, -0.35663, -0.184483);
+    }
+
+    public Heuristic(double heightWeight, double linesWeight, double holesWeight, double bumpinessWeight) {
+        this.heightWeight = heightWeight;
+        this.linesWeight = linesWeight;
+        this.holesWeight = holesWeight;
+        this.bumpinessWeight = bumpinessWeight;
+    }
+
+    public double evaluate(Board board, int linesCleared) {
+        int aggregateHeight = 0;
+        int holes = 0;
+        int bumpiness = 0;
+        int previous = -1;
+        for (int x = 0; x < board.getWidth(); x++) {
+            int height = board.getHeight() - board.getColumnTop(x);
+            // Linear in the width only: the board counts the cells of every column.
+            holes += height - board.getColumnCells(x);
+            aggregateHeight += height;
+            if (previous >= 0)
+                bumpiness += Math.abs(height - previous);
+            previous = height;
+        }
+        return heightWeight * aggregateHeight + linesWeight * linesCleared
+                + holesWeight * holes + bumpinessWeight * bumpiness;
+    }
+}
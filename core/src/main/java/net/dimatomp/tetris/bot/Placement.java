@@ -0,0 +1,45 @@
+package net.dimatomp.tetris.bot;
+
+// Final pose of a figure together with how to get there: first turns, then moves along the row.
+public class Placement {
+    private final int turns;
+    private final int turnDegree;
+    private final int x;
+    private final int y;
+    private final double value;
+
+    public Placement(int turns, int turnDegree, int x, int y, double value) {
+        this.turns = turns;
+        this.turnDegree = turnDegree;
+        this.x = x;
+        this.y = y;
+        this.value = value;
+    }
+
+    // Signed number of turnClockwise(1) steps, made before any move to the side.
+    public int getTurns() {
+        return turns;
+    }
+
+    public int getTurnDegree() {
+        return turnDegree;
+    }
+
+    public int getX() {
+        return x;
+    }
+
+    public int getY() {
+        return y;
+    }
+
+    public double getValue() {
+        return value;
+    }
+
+    @Override
+    public String toString() {
+        return "Placement{turns=" + turns + ", turnDegree=" + turnDegree + ", x=" + x + ", y=" + y
+                + ", value=" + value + '}';
+    }
+}
@@ -0,0 +1,200 @@
+package net.dimatomp.tetris.bot;
+
+import net.dimatomp.tetris.Board;
+import net.dimatomp.tetris.Figure;
+import net.dimatomp.tetris.TetrisModel;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+// Finds the best final placement of the current figure. Every placement reachable through
+// turns followed by moves along the row and a drop becomes one fork-join task; each task
+// then looks ahead through the preview figures, which are dropped straight from the top.
+// Once the budget is spent the lookahead stops and boards are scored as they are.
+// With a cache, the values of finished lookaheads are kept by board hash, lines cleared on the way and
+// the figures still to come, so positions reached again skip the work.
+public class PlacementSearch {
+    private static final long GOLDEN = 0x9E3779B97F4A7C15L;
+    private final Heuristic heuristic;
+    private final ForkJoinPool pool;
+    private final TranspositionCache cache;
+
+    public PlacementSearch(Heuristic heuristic) {
+        this(heuristic, new ForkJoinPool());
+    }
+
+    // A null pool searches on the calling thread, e.g. when every core already runs a game of its own.
+    public PlacementSearch(Heuristic heuristic, ForkJoinPool pool) {
+        this(heuristic, pool, null);
+    }
+
+    // The cache may be shared with other searches of the same heuristic, on any threads. Null for none.
+    public PlacementSearch(Heuristic heuristic, ForkJoinPool pool, TranspositionCache cache) {
+        this.heuristic = heuristic;
+        this.pool = pool;
+        this.cache = cache;
+    }
+
+    // Null when the figure cannot be placed at all.
+    public Placement find(TetrisModel model, int[] preview, long budgetNanos) {
+        long deadline = System.nanoTime() + budgetNanos;
+        List<Candidate> candidates = enumerate(model, preview, deadline);
+        if (candidates.isEmpty())
+            return null;
+        // Scored even when the budget is spent before it starts, so that there is a placement to return.
+        candidates.get(0).required = true;
+        if (pool != null) {
+            for (Candidate candidate : candidates)
+                pool.execute(candidate);
+        }
+        Candidate best = null;
+        for (Candidate candidate : candidates) {
+            // The caller is not a thread of the pool, it waits here while the workers score the candidates.
+            double value = pool != null ? candidate.join() : candidate.compute();
+            // Not scored before the deadline, the best so far is taken.
+            if (Double.isNaN(value))
+                continue;
+            if (best == null || value > best.value) {
+                candidate.value = value;
+                best = candidate;
+            }
+        }
+        return new Placement(best.turns, best.turnDegree, best.x, best.y, best.value);
+    }
+
+    private List<Candidate> enumerate(TetrisModel model, int[] preview, long deadline) {
+        Board board = model.copyBoard();
+        int type = model.getFigureType();
+        int turnCount = TetrisModel.getPosCount(type);
+        List<Candidate> result = new ArrayList<>();
+        for (int turns = -turnCount / 2; turns <= (turnCount - 1) / 2; turns++) {
+            // Replays the turns of TetrisModel.turnClockwise(), kicks included.
+            int degree = model.getTurnDegree();
+            int x = model.getX();
+            int y = model.getY();
+            boolean reachable = true;
+            for (int i = 0; i < Math.abs(turns) && reachable; i++) {
+                degree = (degree + Integer.signum(turns) + turnCount) % turnCount;
+                Figure figure = Figure.get(type, degree);
+                int kick = board.findKick(figure, x, y);
+                reachable = kick >= 0;
+                if (reachable) {
+                    x += figure.getKickX(kick);
+                    y += figure.getKickY(kick);
+                }
+            }
+            if (!reachable)
+                continue;
+            Figure figure = Figure.get(type, degree);
+            if (board.collides(figure, x, y))
+                continue;
+            int left = x;
+            while (!board.collides(figure, left - 1, y))
+                left--;
+            int right = x;
+            while (!board.collides(figure, right + 1, y))
+                right++;
+            for (int column = left; column <= right; column++)
+                result.add(new Candidate(board, figure, turns, degree, column,
+                        board.dropY(figure, column, y), preview, deadline));
+        }
+        return result;
+    }
+
+    private double lookahead(Board board, int lines, int[] preview, int depth, long deadline) {
+        if (depth == preview.length || System.nanoTime() - deadline > 0)
+            return heuristic.evaluate(board, lines);
+        // Scoring a single board costs less than a lookup, only the lookaheads are cached.
+        if (cache == null)
+            return expand(board, lines, preview, depth, deadline);
+        long key = key(board, lines, preview, depth);
+        double value = cache.get(key);
+        if (!Double.isNaN(value))
+            return value;
+        value = expand(board, lines, preview, depth, deadline);
+        // A lookahead cut short by the deadline is not what a full one finds, so it is not kept.
+        if (System.nanoTime() - deadline <= 0)
+            cache.put(key, value);
+        return value;
+    }
+
+    private static long key(Board board, int lines, int[] preview, int depth) {
+        long figures = preview.length - depth;
+        for (int i = depth; i < preview.length; i++)
+            figures = (figures + preview[i] + 1) * GOLDEN;
+        return board.getHash() ^ Long.rotateLeft(figures, 29) ^ (lines + 1L) * 0xC2B2AE3D27D4EB4FL;
+    }
+
+    private double expand(Board board, int lines, int[] preview, int depth, long deadline) {
+        int type = preview[depth];
+        Board next = new Board(board.getWidth(), board.getHeight());
+        double best = Double.NEGATIVE_INFINITY;
+        for (int degree = 0; degree < TetrisModel.getPosCount(type); degree++) {
+            Figure figure = Figure.get(type, degree);
+            int spawnY = 1 - figure.getHeight();
+            for (int x = -figure.getLeft(); x + figure.getRight() <= board.getWidth(); x++) {
+                // Out of budget halfway: the best so far, or the board as it is before anything was tried.
+                if (System.nanoTime() - deadline > 0)
+                    return best == Double.NEGATIVE_INFINITY ? heuristic.evaluate(board, lines) : best;
+                if (board.collides(figure, x, spawnY))
+                    continue;
+                next.copyFrom(board);
+                int y = next.dropY(figure, x, spawnY);
+                if (isAboveField(figure, y))
+                    continue;
+                int cleared = next.settle(figure, x, y);
+                best = Math.max(best, lookahead(next, lines + cleared, preview, depth + 1, deadline));
+            }
+        }
+        // Nowhere to put the next figure: the game would be over.
+        return best == Double.NEGATIVE_INFINITY ? -Double.MAX_VALUE : best;
+    }
+
+    // Whether some part of the figure would be left above the field.
+    private static boolean isAboveField(Figure figure, int y) {
+        for (int i = 0; i < figure.getCellCount(); i++)
+            if (y + figure.getCellY(i) < 0)
+                return true;
+        return false;
+    }
+
+    private final class Candidate extends RecursiveTask<Double> {
+        // Tasks are never serialized, this only keeps the build free of warnings.
+        private static final long serialVersionUID = 1L;
+        private final Board board;
+        private final Figure figure;
+        private final int turns;
+        private final int turnDegree;
+        private final int x;
+        private final int y;
+        private final int[] preview;
+        private final long deadline;
+        private double value;
+        private boolean required;
+
+        Candidate(Board board, Figure figure, int turns, int turnDegree, int x, int y, int[] preview, long deadline) {
+            this.board = board;
+            this.figure = figure;
+            this.turns = turns;
+            this.turnDegree = turnDegree;
+            this.x = x;
+            this.y = y;
+            this.preview = preview;
+            this.deadline = deadline;
+        }
+
+        @Override
+        protected Double compute() {
+            if (!required && System.nanoTime() - deadline > 0)
+                return Double.NaN;
+            // TetrisModel.throwFigure() ends the game then.
+            if (isAboveField(figure, y))
+                return -Double.MAX_VALUE;
+            Board result = board.copy();
+            int cleared = result.settle(figure, x, y);
+            return lookahead(result, cleared, preview, 0, deadline);
+        }
+    }
+}
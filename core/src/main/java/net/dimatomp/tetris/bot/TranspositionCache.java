@@ -0,0 +1,87 @@
+package net.dimatomp.tetris.bot;
+
+// Search values by position hash, bounded and shared by any number of threads. The low bits of the hash
+// pick one of the stripes, each a direct-mapped table behind its own lock, so threads only wait for each
+// other on the same stripe. A new entry replaces whatever held its slot. At 64 bits a hash is taken for
+// the position itself, collisions are rare enough to only cost a slightly wrong value.
+// The values are those of one heuristic on one board size, a search keeps its own cache per either.
+public final class TranspositionCache {
+    private static final int STRIPE_BITS = 6;
+    private static final int STRIPES = 1 << STRIPE_BITS;
+
+    private final Stripe[] stripes = new Stripe[STRIPES];
+    private final int slotMask;
+
+    // The capacity is rounded up to a power of two, at least one slot per stripe.
+    public TranspositionCache(int capacity) {
+        int perStripe = Math.max(1, (capacity + STRIPES - 1) / STRIPES);
+        int slots = Integer.highestOneBit(perStripe);
+        if (slots < perStripe)
+            slots <<= 1;
+        slotMask = slots - 1;
+        for (int i = 0; i < STRIPES; i++)
+            stripes[i] = new Stripe(slots);
+    }
+
+    public int getCapacity() {
+        return STRIPES * (slotMask + 1);
+    }
+
+    // NaN when the hash is not in the cache.
+    public double get(long hash) {
+        Stripe stripe = stripes[(int) hash & (STRIPES - 1)];
+        int slot = (int) (hash >>> STRIPE_BITS) & slotMask;
+        synchronized (stripe) {
+            if (stripe.used[slot] && stripe.keys[slot] == hash) {
+                stripe.hits++;
+                return stripe.values[slot];
+            }
+            stripe.misses++;
+            return Double.NaN;
+        }
+    }
+
+    // The value must not be NaN.
+    public void put(long hash, double value) {
+        Stripe stripe = stripes[(int) hash & (STRIPES - 1)];
+        int slot = (int) (hash >>> STRIPE_BITS) & slotMask;
+        synchronized (stripe) {
+            stripe.used[slot] = true;
+            stripe.keys[slot] = hash;
+            stripe.values[slot] = value;
+        }
+    }
+
+    public long getHits() {
+        long result = 0;
+        for (Stripe stripe : stripes)
+            synchronized (stripe) {
+                result += stripe.hits;
+            }
+        return result;
+    }
+
+    public long getMisses() {
+        long result = 0;
+        for (Stripe stripe : stripes)
+            synchronized (stripe) {
+                result += stripe.misses;
+            }
+        return result;
+    }
+
+    // Counted under the lock of the stripe rather than in shared counters, which every lookup would contend on.
+    private static final class Stripe {
+        private final boolean[] used;
+        private final long[] keys;
+        private final double[] values;
+        private long hits;
+        private long misses;
+
+        Stripe(int slots) {
+            used = new boolean[slots];
+            keys = new long[slots];
+            values = new double[slots];
+        }
+    }
+}
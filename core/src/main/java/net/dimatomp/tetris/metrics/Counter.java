@@ -0,0 +1,28 @@
+package net.dimatomp.tetris.metrics;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+public final class Counter {
+    private final String name;
+    private final AtomicLong count = new AtomicLong();
+
+    Counter(String name) {
+        this.name = name;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public void increment() {
+        count.incrementAndGet();
+    }
+
+    public void add(long delta) {
+        count.addAndGet(delta);
+    }
+
+    public long get() {
+        return count.get();
+    }
+}
@@ -0,0 +1,98 @@
+package net.dimatomp.tetris.metrics;
+
+import java.io.IOException;
+import java.util.Locale;
+import java.util.concurrent.ConcurrentNavigableMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+
+// Process-wide registry. Hot paths look their metrics up once, into static fields, and only touch
+// those afterwards; the overlay and dumps read them from any thread.
+public final class Metrics {
+    private static final ConcurrentNavigableMap<String, Counter> counters = new ConcurrentSkipListMap<>();
+    private static final ConcurrentNavigableMap<String, LatencyHistogram> histograms = new ConcurrentSkipListMap<>();
+    private static final Tracer NO_TRACER = new Tracer() {
+        @Override
+        public void beginSection(String name) {
+        }
+
+        @Override
+        public void endSection() {
+        }
+    };
+    private static volatile Tracer tracer = NO_TRACER;
+    private static volatile boolean modelTiming;
+
+    private Metrics() {
+    }
+
+    public static Counter counter(String name) {
+        Counter result = counters.get(name);
+        if (result == null) {
+            Counter created = new Counter(name);
+            result = counters.putIfAbsent(name, created);
+            if (result == null)
+                result = created;
+        }
+        return result;
+    }
+
+    public static LatencyHistogram histogram(String name) {
+        LatencyHistogram result = histograms.get(name);
+        if (result == null) {
+            LatencyHistogram created = new LatencyHistogram(name);
+            result = histograms.putIfAbsent(name, created);
+            if (result == null)
+                result = created;
+        }
+        return result;
+    }
+
+    static Tracer getTracer() {
+        return tracer;
+    }
+
+    // Null stops tracing. Set it before the threads that record start, sections must not straddle a change.
+    public static void setTracer(Tracer tracer) {
+        Metrics.tracer = tracer == null ? NO_TRACER : tracer;
+    }
+
+    // Whether the model and the session time each move. Off by default: the timing costs more than a move,
+    // and headless runners with many models on many threads would all contend on the same histograms.
+    public static boolean isModelTiming() {
+        return modelTiming;
+    }
+
+    public static void setModelTiming(boolean enabled) {
+        modelTiming = enabled;
+    }
+
+    // One line per histogram that recorded anything: count, p50, p99 and max in microseconds.
+    public static String summary() {
+        StringBuilder result = new StringBuilder();
+        for (LatencyHistogram histogram : histograms.values()) {
+            if (histogram.getCount() == 0)
+                continue;
+            if (result.length() != 0)
+                result.append('\n');
+            result.append(String.format(Locale.US, "%s %d p50 %.0f p99 %.0f max %.0f us", histogram.getName(),
+                    histogram.getCount(), histogram.getQuantile(0.5) / 1e3, histogram.getQuantile(0.99) / 1e3,
+                    histogram.getMax() / 1e3));
+        }
+        return result.toString();
+    }
+
+    // Every metric, one per line as tab separated name and values, durations in nanoseconds.
+    public static void dump(Appendable out) throws IOException {
+        for (Counter counter : counters.values())
+            out.append("counter\t").append(counter.getName()).append('\t')
+                    .append(Long.toString(counter.get())).append('\n');
+        for (LatencyHistogram histogram : histograms.values()) {
+            out.append("histogram\t").append(histogram.getName());
+            out.append("\tcount=").append(Long.toString(histogram.getCount()));
+            out.append("\tp50=").append(Long.toString(histogram.getQuantile(0.5)));
+            out.append("\tp90=").append(Long.toString(histogram.getQuantile(0.9)));
+            out.append("\tp99=").append(Long.toString(histogram.getQuantile(0.99)));
+            out.append("\tmax=").append(Long.toString(histogram.getMax())).append('\n');
+        }
+    }
+}
@@ -0,0 +1,9 @@
+package net.dimatomp.tetris.metrics;
+
+// Marks sections in a system trace, such as android.os.Trace. Sections end on the thread they began on,
+// innermost first.
+public interface Tracer {
+    void beginSection(String name);
+
+    void endSection();
+}
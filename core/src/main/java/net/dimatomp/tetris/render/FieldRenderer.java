@@ -0,0 +1,259 @@
+package net.dimatomp.tetris.render;
+
+import net.dimatomp.tetris.Area;
+import net.dimatomp.tetris.DirtyRegion;
+import net.dimatomp.tetris.Figure;
+import net.dimatomp.tetris.TetrisModel;
+
+import java.util.Arrays;
+
+// Draws the field the way TetrisView shows it, on any RenderTarget. Settled blocks go to a board layer
+// that is only touched where the model's dirty region says; a frame copies the changed part of the layer
+// and draws the ghost and the figure over it. Larger boards show through a viewport that follows the figure.
+// One thread at a time, the one that plays the model.
+public final class FieldRenderer {
+    public static final int VIEW_SIDE = 24;
+    // The viewport keeps the figure this many cells away from its edges.
+    private static final int VIEW_MARGIN = 4;
+
+    private TetrisModel model;
+    private int width;
+    private int height;
+    private float strokeSize;
+    // Sprites spill over their cells by this much.
+    private float overlap;
+    // The visible cells, the layer is drawn again when they move.
+    private int viewX;
+    private int viewY;
+    private int viewColumns;
+    private int viewRows;
+    private boolean viewMoved;
+    // What the board layer currently shows, indexed by view row * viewColumns + view column.
+    private boolean[] shownCells = new boolean[0];
+    // Where the ghost was drawn last.
+    private Figure ghostFigure;
+    private int ghostX;
+    private int ghostY;
+    // Reused for every frame, which runs for every move of the figure.
+    private final Area dirtyCells = new Area();
+    private final Area cell = new Area();
+    private final Area frame = new Area();
+
+    // Starts over with a model, the next frame is drawn in full.
+    public void setModel(TetrisModel model) {
+        this.model = model;
+        viewColumns = Math.min(model.getWidth(), VIEW_SIDE);
+        viewRows = Math.min(model.getHeight(), VIEW_SIDE);
+        followFigure();
+        ghostFigure = null;
+        viewMoved = true;
+    }
+
+    // The size of the view in pixels, the next frame is drawn in full.
+    public void setSize(int width, int height) {
+        this.width = width;
+        this.height = height;
+        viewMoved = true;
+    }
+
+    public void setStrokeSize(float strokeSize) {
+        this.strokeSize = strokeSize;
+        overlap = strokeSize / 2;
+    }
+
+    // Side of the square sprites, which cover a cell and its overlap.
+    public int getSpriteSide() {
+        int cellSide = (Math.min(width, height) + viewColumns - 1) / viewColumns;
+        return (int) (cellSide + 2 * overlap + 1);
+    }
+
+    // The next frame draws the whole layer again, e.g. after the target lost its contents.
+    public void invalidate() {
+        viewMoved = true;
+    }
+
+    // Brings the layer up to date with the model, the viewport and the ghost and clears the model's dirty
+    // region. Afterwards getFrame() is the area that changed, in pixels; false when none of it is visible.
+    public boolean update(RenderTarget layer) {
+        DirtyRegion region = model.getDirtyRegion();
+        followFigure();
+        moveGhost();
+        if (viewMoved || shownCells.length != viewColumns * viewRows) {
+            redrawLayer(layer);
+            frame.set(0, 0, width, height);
+            region.clear();
+            return true;
+        }
+        boolean visible = false;
+        if (!region.isEmpty()) {
+            refreshField(layer, region);
+            visible = scaled(region.getBounds(dirtyCells), frame);
+        }
+        region.clear();
+        return visible;
+    }
+
+    public Area getFrame() {
+        return frame;
+    }
+
+    // The frame area of the layer, then the ghost and the figure. The target may have grown the area,
+    // e.g. a surface that hands out more than asked for, so this is the area to pass.
+    public void drawFrame(RenderTarget target, Area area) {
+        target.drawLayer(area.left, area.top, area.right, area.bottom);
+        drawGhost(target);
+        drawFigure(target);
+    }
+
+    private int getHorOffset() {
+        return Math.max(0, (width - height) / 2);
+    }
+
+    private int getVerOffset() {
+        return Math.max(0, (height - width) / 2);
+    }
+
+    private int getXPos(int x) {
+        return getHorOffset() + Math.min(width, height) * (x - viewX) / viewColumns;
+    }
+
+    private int getYPos(int y) {
+        return getVerOffset() + Math.min(width, height) * (y - viewY) / viewRows;
+    }
+
+    private boolean isVisible(int x, int y) {
+        return x >= viewX && x < viewX + viewColumns && y >= viewY && y < viewY + viewRows;
+    }
+
+    // Scrolls the view so that the figure stays clear of its edges.
+    private void followFigure() {
+        int left = model.getX() + model.getFigure().getLeft();
+        int right = model.getX() + model.getFigure().getRight();
+        int x = viewX;
+        if (right + VIEW_MARGIN > x + viewColumns)
+            x = right + VIEW_MARGIN - viewColumns;
+        if (left - VIEW_MARGIN < x)
+            x = left - VIEW_MARGIN;
+        x = Math.max(0, Math.min(x, model.getWidth() - viewColumns));
+        int y = viewY;
+        if (model.getY() + model.getFigureHeight() + VIEW_MARGIN > y + viewRows)
+            y = model.getY() + model.getFigureHeight() + VIEW_MARGIN - viewRows;
+        if (model.getY() - VIEW_MARGIN < y)
+            y = model.getY() - VIEW_MARGIN;
+        y = Math.max(0, Math.min(y, model.getHeight() - viewRows));
+        if (x == viewX && y == viewY)
+            return;
+        viewX = x;
+        viewY = y;
+        viewMoved = true;
+    }
+
+    // Marks the old and the new cells of the ghost when it moved, drawing then follows the dirty region.
+    private void moveGhost() {
+        Figure figure = model.getFigure();
+        int y = model.getDropY();
+        if (figure == ghostFigure && model.getX() == ghostX && y == ghostY)
+            return;
+        if (ghostFigure != null)
+            markCells(ghostFigure, ghostX, ghostY);
+        ghostFigure = figure;
+        ghostX = model.getX();
+        ghostY = y;
+        markCells(figure, ghostX, ghostY);
+    }
+
+    private void markCells(Figure figure, int x, int y) {
+        for (int i = 0; i < figure.getCellCount(); i++)
+            model.getDirtyRegion().mark(x + figure.getCellX(i), y + figure.getCellY(i));
+    }
+
+    // The visible part of the cells in pixels, false when none of them are visible.
+    // Sprites spill over their cells by the overlap, the area grows by as much.
+    private boolean scaled(Area cells, Area result) {
+        int left = Math.max(cells.left, viewX);
+        int top = Math.max(cells.top, viewY);
+        int right = Math.min(cells.right, viewX + viewColumns);
+        int bottom = Math.min(cells.bottom, viewY + viewRows);
+        if (left >= right || top >= bottom)
+            return false;
+        int spill = (int) Math.ceil(overlap);
+        result.set(getXPos(left) - spill, getYPos(top) - spill, getXPos(right) + spill, getYPos(bottom) + spill);
+        return true;
+    }
+
+    private void cellBounds(int x, int y, Area result) {
+        result.set((int) (getXPos(x) - overlap), (int) (getYPos(y) - overlap),
+                (int) (getXPos(x + 1) + overlap), (int) (getYPos(y + 1) + overlap));
+    }
+
+    // Draws the visible cells on the board layer from scratch, the cost follows the view size only.
+    private void redrawLayer(RenderTarget layer) {
+        viewMoved = false;
+        if (shownCells.length != viewColumns * viewRows)
+            shownCells = new boolean[viewColumns * viewRows];
+        layer.fillBackground(0, 0, width, height);
+        layer.drawBorder(getXPos(viewX) - strokeSize, getYPos(viewY) - strokeSize,
+                getXPos(viewX + viewColumns) + strokeSize, getYPos(viewY + viewRows) + strokeSize);
+        Arrays.fill(shownCells, false);
+        for (int y = viewY; y < viewY + viewRows; y++)
+            refreshRow(layer, y, viewX, viewX + viewColumns);
+    }
+
+    // Brings the visible dirty cells of the board layer up to date with the model,
+    // only the cells that changed since they were last drawn are touched.
+    private void refreshField(RenderTarget layer, DirtyRegion region) {
+        int bottom = Math.min(region.getBottom(), viewY + viewRows);
+        for (int y = Math.max(region.getTop(), viewY); y < bottom; y++)
+            refreshRow(layer, y, Math.max(region.getLeft(y), viewX), Math.min(region.getRight(y), viewX + viewColumns));
+    }
+
+    private void refreshRow(RenderTarget layer, int y, int left, int right) {
+        for (int x = left; x < right; x++) {
+            boolean occupied = model.isOccupied(x, y);
+            int index = (y - viewY) * viewColumns + x - viewX;
+            if (occupied == shownCells[index])
+                continue;
+            shownCells[index] = occupied;
+            if (occupied)
+                drawSprite(layer, RenderTarget.BLOCK, x, y);
+            else
+                eraseCell(layer, x, y);
+        }
+    }
+
+    // Block sprites spill over their neighbours by the overlap, so these are drawn again.
+    private void eraseCell(RenderTarget layer, int x, int y) {
+        cellBounds(x, y, cell);
+        layer.fillBackground(cell.left, cell.top, cell.right, cell.bottom);
+        for (int nx = Math.max(viewX, x - 1); nx <= x + 1 && nx < viewX + viewColumns; nx++)
+            for (int ny = Math.max(viewY, y - 1); ny <= y + 1 && ny < viewY + viewRows; ny++)
+                if (shownCells[(ny - viewY) * viewColumns + nx - viewX])
+                    drawSprite(layer, RenderTarget.BLOCK, nx, ny);
+    }
+
+    private void drawSprite(RenderTarget target, int sprite, int x, int y) {
+        cellBounds(x, y, cell);
+        target.drawSprite(sprite, cell.left, cell.top, cell.right, cell.bottom);
+    }
+
+    private void drawGhost(RenderTarget target) {
+        if (ghostFigure == null)
+            return;
+        for (int i = 0; i < ghostFigure.getCellCount(); i++) {
+            int x = ghostX + ghostFigure.getCellX(i);
+            int y = ghostY + ghostFigure.getCellY(i);
+            if (y >= 0 && isVisible(x, y))
+                drawSprite(target, RenderTarget.GHOST, x, y);
+        }
+    }
+
+    private void drawFigure(RenderTarget target) {
+        Figure figure = model.getFigure();
+        for (int i = 0; i < figure.getCellCount(); i++) {
+            int x = model.getX() + figure.getCellX(i);
+            int y = model.getY() + figure.getCellY(i);
+            if (y >= 0 && isVisible(x, y))
+                drawSprite(target, RenderTarget.FIGURE, x, y);
+        }
+    }
+}
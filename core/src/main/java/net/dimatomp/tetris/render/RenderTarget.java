@@ -0,0 +1,20 @@
+package net.dimatomp.tetris.render;
+
+// What FieldRenderer draws on: an Android canvas on the device, an image or nothing in the benchmarks.
+// Coordinates are pixels, right and bottom edges exclusive. Colors and sprites belong to the target.
+public interface RenderTarget {
+    int BLOCK = 0;
+    int FIGURE = 1;
+    // The figure where it would land, drawn translucent.
+    int GHOST = 2;
+
+    void fillBackground(int left, int top, int right, int bottom);
+
+    // An outline, the stroke centered on the edges.
+    void drawBorder(float left, float top, float right, float bottom);
+
+    void drawSprite(int sprite, int left, int top, int right, int bottom);
+
+    // Copies the area from the board layer to the same place, frames are composed over it.
+    void drawLayer(int left, int top, int right, int bottom);
+}
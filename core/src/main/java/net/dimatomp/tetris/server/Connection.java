@@ -0,0 +1,58 @@
+package net.dimatomp.tetris.server;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.SocketChannel;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+// One client socket. Input and the session list belong to the I/O thread, output is appended by the
+// tick threads and written out by the I/O thread.
+final class Connection {
+    // A client that falls this far behind is disconnected rather than buffered for.
+    private static final int MAX_OUTPUT = 1 << 20;
+
+    final SocketChannel channel;
+    final ByteBuffer input = ByteBuffer.allocate(4096);
+    // Live sessions, the shards hand back the ones that ended.
+    final Set<ServerSession> sessions = new HashSet<>();
+    // Set while the connection waits in the flush queue of the I/O thread.
+    final AtomicBoolean flushPending = new AtomicBoolean();
+    volatile boolean closed;
+    // Guarded by this, in write mode.
+    private ByteBuffer output = ByteBuffer.allocate(4096);
+
+    Connection(SocketChannel channel) {
+        this.channel = channel;
+    }
+
+    // Appends the frames between position and limit, false when they do not fit.
+    synchronized boolean send(ByteBuffer frames) {
+        if (output.remaining() < frames.remaining()) {
+            int needed = output.position() + frames.remaining();
+            if (needed > MAX_OUTPUT)
+                return false;
+            int capacity = output.capacity();
+            while (capacity < needed)
+                capacity *= 2;
+            ByteBuffer grown = ByteBuffer.allocate(Math.min(capacity, MAX_OUTPUT));
+            output.flip();
+            grown.put(output);
+            output = grown;
+        }
+        output.put(frames);
+        return true;
+    }
+
+    // Writes as much as the socket takes, true when everything went out.
+    synchronized boolean flush() throws IOException {
+        output.flip();
+        try {
+            channel.write(output);
+            return !output.hasRemaining();
+        } finally {
+            output.compact();
+        }
+    }
+}
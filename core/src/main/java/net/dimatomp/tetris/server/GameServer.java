@@ -0,0 +1,344 @@
+package net.dimatomp.tetris.server;
+
+import net.dimatomp.tetris.GameSession;
+import net.dimatomp.tetris.TetrisModel;
+import net.dimatomp.tetris.metrics.Counter;
+import net.dimatomp.tetris.metrics.LatencyHistogram;
+import net.dimatomp.tetris.metrics.Metrics;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+// Hosts many games in one process, see Protocol for the wire format. One thread does all socket I/O
+// through a selector; the sessions are split into shards, each ticked every TICK_NANOS by a small
+// shared pool, so the thread count does not grow with the number of games.
+public final class GameServer {
+    public static final int DEFAULT_PORT = 7411;
+    private static final LatencyHistogram shardTickTime = Metrics.histogram("server.shardTick");
+    private static final Counter deltas = Metrics.counter("server.deltas");
+    private static final Counter slowClients = Metrics.counter("server.slowClients");
+    private static final Counter droppedCommands = Metrics.counter("server.droppedCommands");
+    private static final Counter sessionErrors = Metrics.counter("server.sessionErrors");
+
+    private final Selector selector;
+    private final ServerSocketChannel serverChannel;
+    private final ScheduledExecutorService scheduler;
+    private final Shard[] shards;
+    private final ConcurrentHashMap<Integer, ServerSession> sessions = new ConcurrentHashMap<>();
+    private final AtomicInteger nextId = new AtomicInteger();
+    // Connections with output waiting, handed from the shards to the I/O thread.
+    private final ConcurrentLinkedQueue<Connection> flushQueue = new ConcurrentLinkedQueue<>();
+    // Sessions the shards let go of, for the I/O thread to drop from their connections.
+    private final ConcurrentLinkedQueue<ServerSession> finished = new ConcurrentLinkedQueue<>();
+    private volatile boolean running = true;
+
+    public GameServer(InetSocketAddress address, int threads) throws IOException {
+        selector = Selector.open();
+        serverChannel = ServerSocketChannel.open();
+        serverChannel.bind(address, 1024);
+        serverChannel.configureBlocking(false);
+        serverChannel.register(selector, SelectionKey.OP_ACCEPT);
+        scheduler = Executors.newScheduledThreadPool(threads);
+        shards = new Shard[threads];
+        for (int i = 0; i < threads; i++) {
+            shards[i] = new Shard();
+            scheduler.scheduleAtFixedRate(shards[i], GameSession.TICK_NANOS, GameSession.TICK_NANOS,
+                    TimeUnit.NANOSECONDS);
+        }
+    }
+
+    public static void main(String[] args) throws IOException {
+        int port = DEFAULT_PORT;
+        int threads = Runtime.getRuntime().availableProcessors();
+        for (int i = 0; i + 1 < args.length; i += 2) {
+            switch (args[i]) {
+                case "--port":
+                    port = Integer.parseInt(args[i + 1]);
+                    break;
+                case "--threads":
+                    threads = Integer.parseInt(args[i + 1]);
+                    break;
+                default:
+                    throw new IllegalArgumentException("Unknown option " + args[i]);
+            }
+        }
+        GameServer server = new GameServer(new InetSocketAddress(InetAddress.getLoopbackAddress(), port), threads);
+        System.out.println("Listening on " + server.getAddress() + " with " + threads + " tick threads");
+        server.run();
+    }
+
+    public InetSocketAddress getAddress() throws IOException {
+        return (InetSocketAddress) serverChannel.getLocalAddress();
+    }
+
+    public int getSessionCount() {
+        return sessions.size();
+    }
+
+    // Serves until stop() is called from another thread.
+    public void run() throws IOException {
+        try {
+            while (running) {
+                selector.select();
+                ServerSession session;
+                while ((session = finished.poll()) != null)
+                    session.connection.sessions.remove(session);
+                Connection connection;
+                while ((connection = flushQueue.poll()) != null) {
+                    connection.flushPending.set(false);
+                    if (connection.closed)
+                        close(connection);
+                    else
+                        flush(connection);
+                }
+                Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+                while (keys.hasNext()) {
+                    SelectionKey key = keys.next();
+                    keys.remove();
+                    if (!key.isValid())
+                        continue;
+                    if (key.isAcceptable())
+                        accept();
+                    else {
+                        connection = (Connection) key.attachment();
+                        if (key.isReadable())
+                            read(connection);
+                        if (key.isValid() && key.isWritable())
+                            flush(connection);
+                    }
+                }
+            }
+        } finally {
+            scheduler.shutdownNow();
+            for (SelectionKey key : selector.keys())
+                key.channel().close();
+            selector.close();
+        }
+    }
+
+    public void stop() {
+        running = false;
+        selector.wakeup();
+    }
+
+    private void accept() throws IOException {
+        SocketChannel channel = serverChannel.accept();
+        if (channel == null)
+            return;
+        channel.configureBlocking(false);
+        channel.socket().setTcpNoDelay(true);
+        channel.register(selector, SelectionKey.OP_READ, new Connection(channel));
+    }
+
+    private void read(Connection connection) {
+        ByteBuffer in = connection.input;
+        try {
+            if (connection.channel.read(in) < 0) {
+                close(connection);
+                return;
+            }
+            in.flip();
+            while (in.remaining() >= 5) {
+                int length = in.getInt(in.position());
+                if (length < 1 || length > Protocol.MAX_CLIENT_FRAME)
+                    throw new IllegalArgumentException("Bad frame length " + length);
+                if (in.remaining() < 4 + length)
+                    break;
+                int end = in.position() + 4 + length;
+                in.getInt();
+                handle(connection, in.get() & 0xFF, in);
+                in.position(end);
+            }
+            in.compact();
+        } catch (IOException | IllegalArgumentException | BufferUnderflowException e) {
+            close(connection);
+        }
+    }
+
+    private void handle(Connection connection, int type, ByteBuffer in) {
+        switch (type) {
+            case Protocol.CREATE: {
+                int tag = in.getInt();
+                int width = Protocol.getVarInt(in);
+                int height = Protocol.getVarInt(in);
+                long seed = in.getLong();
+                if (width < TetrisModel.MIN_WIDTH || height < TetrisModel.MIN_HEIGHT
+                        || width > Protocol.MAX_SIDE || height > Protocol.MAX_SIDE)
+                    throw new IllegalArgumentException("Bad field size " + width + "x" + height);
+                if (connection.sessions.size() >= Protocol.MAX_SESSIONS)
+                    throw new IllegalArgumentException("Too many sessions");
+                int id = nextId.incrementAndGet();
+                TetrisModel model = GameSession.newModel(width, height, seed);
+                ServerSession session = new ServerSession(id, tag, connection, new GameSession(model, false));
+                sessions.put(id, session);
+                connection.sessions.add(session);
+                shards[(id & Integer.MAX_VALUE) % shards.length].added.add(session);
+                break;
+            }
+            case Protocol.COMMAND: {
+                ServerSession session = sessions.get(in.getInt());
+                int command = in.get();
+                // Only the connection that created a session may play it.
+                if (session != null && session.connection == connection
+                        && !session.commands.offer(command, System.nanoTime()))
+                    droppedCommands.increment();
+                break;
+            }
+            case Protocol.CLOSE: {
+                ServerSession session = sessions.get(in.getInt());
+                if (session != null && session.connection == connection) {
+                    closeSession(session);
+                    connection.sessions.remove(session);
+                }
+                break;
+            }
+            default:
+                throw new IllegalArgumentException("Unknown frame type " + type);
+        }
+    }
+
+    private void flush(Connection connection) {
+        SelectionKey key = connection.channel.keyFor(selector);
+        if (key == null || !key.isValid())
+            return;
+        try {
+            boolean done = connection.flush();
+            key.interestOps(done ? SelectionKey.OP_READ : SelectionKey.OP_READ | SelectionKey.OP_WRITE);
+        } catch (IOException e) {
+            close(connection);
+        }
+    }
+
+    private void close(Connection connection) {
+        connection.closed = true;
+        for (ServerSession session : connection.sessions)
+            closeSession(session);
+        connection.sessions.clear();
+        try {
+            connection.channel.close();
+        } catch (IOException ignored) {
+        }
+    }
+
+    private void closeSession(ServerSession session) {
+        session.closed = true;
+        sessions.remove(session.id, session);
+    }
+
+    // Called by the shards; the I/O thread picks the connection up on its next round.
+    private boolean send(Connection connection, ByteBuffer frames) {
+        if (connection.closed)
+            return false;
+        if (!connection.send(frames)) {
+            // Too far behind to catch up, its sessions are dropped on the I/O thread.
+            slowClients.increment();
+            connection.closed = true;
+            flushQueue.add(connection);
+            return false;
+        }
+        if (connection.flushPending.compareAndSet(false, true))
+            flushQueue.add(connection);
+        return true;
+    }
+
+    private final class Shard implements Runnable {
+        final ConcurrentLinkedQueue<ServerSession> added = new ConcurrentLinkedQueue<>();
+        private final ArrayList<ServerSession> owned = new ArrayList<>();
+        // Room for the largest delta Protocol.MAX_SIDE allows.
+        private final ByteBuffer frame = ByteBuffer.allocate(64 + Protocol.MAX_SIDE * (Protocol.MAX_SIDE / 8 + 16));
+
+        @Override
+        public void run() {
+            long start = shardTickTime.start();
+            ServerSession session;
+            while ((session = added.poll()) != null) {
+                owned.add(session);
+                frame.clear();
+                int begin = Protocol.beginFrame(frame, Protocol.CREATED);
+                frame.putInt(session.tag);
+                frame.putInt(session.id);
+                Protocol.endFrame(frame, begin);
+                frame.flip();
+                send(session.connection, frame);
+            }
+            for (int i = owned.size() - 1; i >= 0; i--) {
+                session = owned.get(i);
+                if (session.closed || session.connection.closed || !tickSafely(session)) {
+                    closeSession(session);
+                    finished.add(session);
+                    // Order does not matter, so the last session takes the place of the removed one.
+                    owned.set(i, owned.get(owned.size() - 1));
+                    owned.remove(owned.size() - 1);
+                }
+            }
+            // One wakeup per round rather than one per frame.
+            if (!flushQueue.isEmpty() || !finished.isEmpty())
+                selector.wakeup();
+            shardTickTime.stop(start);
+        }
+
+        // A session that fails ends on its own, an exception escaping run() would cancel the whole shard.
+        private boolean tickSafely(ServerSession session) {
+            try {
+                return tick(session);
+            } catch (RuntimeException e) {
+                sessionErrors.increment();
+                sendGameOver(session);
+                return false;
+            }
+        }
+
+        private void sendGameOver(ServerSession session) {
+            frame.clear();
+            int begin = Protocol.beginFrame(frame, Protocol.GAME_OVER);
+            frame.putInt(session.id);
+            Protocol.putVarLong(frame, session.game.getModel().getScore());
+            Protocol.endFrame(frame, begin);
+            frame.flip();
+            send(session.connection, frame);
+        }
+
+        // False once the session is over.
+        private boolean tick(ServerSession session) {
+            GameSession game = session.game;
+            TetrisModel model = game.getModel();
+            boolean applied = false;
+            while (!session.commands.isEmpty()) {
+                int command = session.commands.peekEvent();
+                session.commands.remove();
+                if (command >= 0 && command <= GameSession.HARD_DROP) {
+                    game.input(command);
+                    applied = true;
+                }
+            }
+            game.tick();
+            if (game.isOver()) {
+                sendGameOver(session);
+                return false;
+            }
+            frame.clear();
+            if (!applied && model.getDirtyRegion().isEmpty())
+                return true;
+            Protocol.writeDelta(frame, session.id, game.getTick(), model);
+            model.getDirtyRegion().clear();
+            frame.flip();
+            deltas.increment();
+            return send(session.connection, frame);
+        }
+    }
+}
@@ -0,0 +1,230 @@
+package net.dimatomp.tetris.server;
+
+import net.dimatomp.tetris.GameSession;
+import net.dimatomp.tetris.metrics.LatencyHistogram;
+import net.dimatomp.tetris.metrics.Metrics;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Locale;
+import java.util.Random;
+
+// Plays random commands in many sessions of a GameServer from one thread and prints the delta throughput
+// and the latency from a command to the delta that applied it. Sessions are created again when they end.
+public final class LoadGenerator {
+    private String host = "127.0.0.1";
+    private int port = GameServer.DEFAULT_PORT;
+    private int connections = 16;
+    private int sessions = 1000;
+    private int seconds = 30;
+    // Commands per second per session.
+    private double rate = 2;
+    private int width = 10;
+    private int height = 20;
+
+    private final Random random = new Random(1);
+    private final LatencyHistogram latency = Metrics.histogram("load.commandToDelta");
+    private long deltaCount;
+    private long byteCount;
+    private long commandCount;
+    private long gameOverCount;
+
+    private LoadGenerator() {
+    }
+
+    public static void main(String[] args) throws IOException {
+        LoadGenerator generator = new LoadGenerator();
+        generator.parse(args);
+        generator.run();
+    }
+
+    private void parse(String[] args) {
+        for (int i = 0; i + 1 < args.length; i += 2) {
+            String value = args[i + 1];
+            switch (args[i]) {
+                case "--host":
+                    host = value;
+                    break;
+                case "--port":
+                    port = Integer.parseInt(value);
+                    break;
+                case "--connections":
+                    connections = Integer.parseInt(value);
+                    break;
+                case "--sessions":
+                    sessions = Integer.parseInt(value);
+                    break;
+                case "--duration":
+                    seconds = Integer.parseInt(value);
+                    break;
+                case "--rate":
+                    rate = Double.parseDouble(value);
+                    break;
+                case "--width":
+                    width = Integer.parseInt(value);
+                    break;
+                case "--height":
+                    height = Integer.parseInt(value);
+                    break;
+                default:
+                    throw new IllegalArgumentException("Unknown option " + args[i]);
+            }
+        }
+        if (args.length % 2 != 0)
+            throw new IllegalArgumentException("Missing value for " + args[args.length - 1]);
+    }
+
+    private void run() throws IOException {
+        Selector selector = Selector.open();
+        Client[] clients = new Client[connections];
+        long now = System.nanoTime();
+        for (int i = 0; i < connections; i++) {
+            // Sessions are spread evenly, the first connections take the remainder.
+            int count = sessions / connections + (i < sessions % connections ? 1 : 0);
+            SocketChannel channel = SocketChannel.open(new InetSocketAddress(host, port));
+            channel.socket().setTcpNoDelay(true);
+            channel.configureBlocking(false);
+            clients[i] = new Client(channel, count);
+            channel.register(selector, SelectionKey.OP_READ, clients[i]);
+            // The creates go out over the first rounds, as many per round as the output buffer holds.
+            clients[i].sendDue(now, 0);
+            clients[i].flush();
+        }
+        long period = (long) (1e9 / rate);
+        long end = now + seconds * 1000000000L;
+        long nextReport = now + 1000000000L;
+        long reportedDeltas = 0;
+        long reportedBytes = 0;
+        while ((now = System.nanoTime()) - end < 0) {
+            selector.select(1);
+            Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+            while (keys.hasNext()) {
+                SelectionKey key = keys.next();
+                keys.remove();
+                ((Client) key.attachment()).read(now);
+            }
+            for (Client client : clients) {
+                client.sendDue(now, period);
+                client.flush();
+            }
+            if (now - nextReport >= 0) {
+                System.out.println(String.format(Locale.US, "%,d deltas/s, %,d KB/s, latency p50 %.2f ms, p99 %.2f ms",
+                        deltaCount - reportedDeltas, (byteCount - reportedBytes) / 1024,
+                        latency.getQuantile(0.5) / 1e6, latency.getQuantile(0.99) / 1e6));
+                reportedDeltas = deltaCount;
+                reportedBytes = byteCount;
+                nextReport += 1000000000L;
+            }
+        }
+        for (Client client : clients)
+            client.channel.close();
+        selector.close();
+        System.out.println(String.format(Locale.US,
+                "%d sessions over %d connections for %d s: %,d commands, %,d deltas (%,.0f/s), %,d KB (%,.0f KB/s), %d games over",
+                sessions, connections, seconds, commandCount, deltaCount, deltaCount / (double) seconds,
+                byteCount / 1024, byteCount / 1024.0 / seconds, gameOverCount));
+        System.out.println(String.format(Locale.US,
+                "command to delta: p50 %.2f ms, p99 %.2f ms, p99.9 %.2f ms, max %.2f ms over %,d samples",
+                latency.getQuantile(0.5) / 1e6, latency.getQuantile(0.99) / 1e6, latency.getQuantile(0.999) / 1e6,
+                latency.getMax() / 1e6, latency.getCount()));
+    }
+
+    private final class Client {
+        final SocketChannel channel;
+        final ByteBuffer in = ByteBuffer.allocate(1 << 18);
+        final ByteBuffer out = ByteBuffer.allocate(1 << 16);
+        // Indexed by tag, the session id is 0 until CREATED arrives.
+        final int[] ids;
+        // Whether the CREATE for a tag without a session went out.
+        final boolean[] requested;
+        final long[] nextCommand;
+        // Send time of the oldest command not yet answered with a delta, 0 if none.
+        final long[] pending;
+        final HashMap<Integer, Integer> tags = new HashMap<>();
+
+        Client(SocketChannel channel, int count) {
+            this.channel = channel;
+            ids = new int[count];
+            requested = new boolean[count];
+            nextCommand = new long[count];
+            pending = new long[count];
+        }
+
+        // Creates the sessions that are missing and sends the commands that are due, while there is room.
+        void sendDue(long now, long period) {
+            for (int tag = 0; tag < ids.length; tag++) {
+                if (ids[tag] == 0 ? requested[tag] : nextCommand[tag] - now > 0)
+                    continue;
+                if (out.remaining() < Protocol.MAX_CLIENT_FRAME + 4)
+                    return;
+                if (ids[tag] == 0) {
+                    Protocol.writeCreate(out, tag, width, height, random.nextLong());
+                    requested[tag] = true;
+                    continue;
+                }
+                Protocol.writeCommand(out, ids[tag], random.nextInt(GameSession.SPEED_UP + 1));
+                commandCount++;
+                if (pending[tag] == 0)
+                    pending[tag] = now;
+                nextCommand[tag] += period / 2 + (long) (random.nextDouble() * period);
+            }
+        }
+
+        void flush() throws IOException {
+            out.flip();
+            channel.write(out);
+            out.compact();
+        }
+
+        void read(long now) throws IOException {
+            int count = channel.read(in);
+            if (count < 0)
+                throw new IOException("Server closed the connection");
+            byteCount += count;
+            in.flip();
+            while (in.remaining() >= 4 && in.remaining() >= 4 + in.getInt(in.position())) {
+                int frameEnd = in.position() + 4 + in.getInt();
+                int type = in.get() & 0xFF;
+                switch (type) {
+                    case Protocol.CREATED: {
+                        int tag = in.getInt();
+                        ids[tag] = in.getInt();
+                        tags.put(ids[tag], tag);
+                        nextCommand[tag] = now + (long) (random.nextDouble() * 1e9 / rate);
+                        break;
+                    }
+                    case Protocol.DELTA: {
+                        deltaCount++;
+                        Integer tag = tags.get(in.getInt());
+                        if (tag != null && pending[tag] != 0) {
+                            latency.record(now - pending[tag]);
+                            pending[tag] = 0;
+                        }
+                        break;
+                    }
+                    case Protocol.GAME_OVER: {
+                        gameOverCount++;
+                        Integer tag = tags.remove(in.getInt());
+                        if (tag != null) {
+                            // Created again by the next sendDue().
+                            ids[tag] = 0;
+                            requested[tag] = false;
+                            pending[tag] = 0;
+                        }
+                        break;
+                    }
+                    default:
+                        throw new IOException("Unknown frame type " + type);
+                }
+                in.position(frameEnd);
+            }
+            in.compact();
+        }
+    }
+}
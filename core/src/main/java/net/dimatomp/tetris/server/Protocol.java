@@ -0,0 +1,139 @@
+package net.dimatomp.tetris.server;
+
+import net.dimatomp.tetris.DirtyRegion;
+import net.dimatomp.tetris.TetrisModel;
+
+import java.nio.ByteBuffer;
+
+// Frames in both directions are a 4 byte length of the rest, a type byte and the payload. Fixed size
+// integers are big endian, varints take 7 bits per byte, least significant first.
+// Client to server:
+//   CREATE    tag u32, width varint, height varint, seed u64
+//   COMMAND   session u32, GameSession command u8
+//   CLOSE     session u32
+// Server to client:
+//   CREATED   tag u32, session u32
+//   DELTA     session u32, tick varint, figure type u8, turn u8, zigzag varint x and y, score varint,
+//             dirty row count varint, per row y, left and width varints and the cells as bits, lowest first
+//   GAME_OVER session u32, score varint
+// Commands are MOVE_LEFT to HARD_DROP of GameSession. A DELTA follows every tick that changed the game or applied commands.
+// A bad frame, a field size out of bounds or more than MAX_SESSIONS live sessions close the connection.
+public final class Protocol {
+    public static final int CREATE = 1;
+    public static final int COMMAND = 2;
+    public static final int CLOSE = 3;
+    public static final int CREATED = 0x81;
+    public static final int DELTA = 0x82;
+    public static final int GAME_OVER = 0x83;
+    // Bounds the memory of a session and the size of a delta.
+    public static final int MAX_SIDE = 256;
+    // Per connection, bounds what one client can make the server hold.
+    public static final int MAX_SESSIONS = 1 << 14;
+    public static final int MAX_CLIENT_FRAME = 32;
+
+    private Protocol() {
+    }
+
+    // Returns the start of the frame, to be passed to endFrame() once the payload is written.
+    public static int beginFrame(ByteBuffer out, int type) {
+        int start = out.position();
+        out.putInt(0);
+        out.put((byte) type);
+        return start;
+    }
+
+    public static void endFrame(ByteBuffer out, int start) {
+        out.putInt(start, out.position() - start - 4);
+    }
+
+    public static void putVarLong(ByteBuffer out, long value) {
+        while ((value & ~0x7FL) != 0) {
+            out.put((byte) ((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        out.put((byte) value);
+    }
+
+    public static long getVarLong(ByteBuffer in) {
+        long result = 0;
+        for (int shift = 0; shift < 64; shift += 7) {
+            int b = in.get();
+            result |= (long) (b & 0x7F) << shift;
+            if ((b & 0x80) == 0)
+                return result;
+        }
+        throw new IllegalArgumentException("Malformed varint");
+    }
+
+    public static int getVarInt(ByteBuffer in) {
+        long result = getVarLong(in);
+        if (result >>> 32 != 0)
+            throw new IllegalArgumentException("Malformed varint");
+        return (int) result;
+    }
+
+    public static int zigzag(int value) {
+        return (value << 1) ^ (value >> 31);
+    }
+
+    public static int unzigzag(int value) {
+        return (value >>> 1) ^ -(value & 1);
+    }
+
+    public static void writeCreate(ByteBuffer out, int tag, int width, int height, long seed) {
+        int start = beginFrame(out, CREATE);
+        out.putInt(tag);
+        putVarLong(out, width);
+        putVarLong(out, height);
+        out.putLong(seed);
+        endFrame(out, start);
+    }
+
+    public static void writeCommand(ByteBuffer out, int session, int command) {
+        int start = beginFrame(out, COMMAND);
+        out.putInt(session);
+        out.put((byte) command);
+        endFrame(out, start);
+    }
+
+    // The cells of the model's dirty region, which the caller clears afterwards.
+    public static void writeDelta(ByteBuffer out, int session, long tick, TetrisModel model) {
+        int start = beginFrame(out, DELTA);
+        out.putInt(session);
+        putVarLong(out, tick);
+        out.put((byte) model.getFigureType());
+        out.put((byte) model.getTurnDegree());
+        putVarLong(out, zigzag(model.getX()) & 0xFFFFFFFFL);
+        putVarLong(out, zigzag(model.getY()) & 0xFFFFFFFFL);
+        putVarLong(out, model.getScore());
+        DirtyRegion region = model.getDirtyRegion();
+        int rows = 0;
+        for (int y = region.getTop(); y < region.getBottom(); y++)
+            if (region.isRowDirty(y))
+                rows++;
+        putVarLong(out, rows);
+        for (int y = region.getTop(); y < region.getBottom(); y++) {
+            if (!region.isRowDirty(y))
+                continue;
+            int left = region.getLeft(y);
+            int right = region.getRight(y);
+            putVarLong(out, y);
+            putVarLong(out, left);
+            putVarLong(out, right - left);
+            int bits = 0;
+            int count = 0;
+            for (int x = left; x < right; x++) {
+                if (model.isOccupied(x, y))
+                    bits |= 1 << count;
+                if (++count == 8) {
+                    out.put((byte) bits);
+                    bits = 0;
+                    count = 0;
+                }
+            }
+            if (count != 0)
+                out.put((byte) bits);
+        }
+        endFrame(out, start);
+    }
+}
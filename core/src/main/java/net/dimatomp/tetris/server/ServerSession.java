@@ -0,0 +1,23 @@
+package net.dimatomp.tetris.server;
+
+import net.dimatomp.tetris.GameSession;
+import net.dimatomp.tetris.InputQueue;
+
+// A game hosted by the server. Commands come from the I/O thread, everything else runs on the tick
+// thread of the shard that owns the session.
+final class ServerSession {
+    final int id;
+    final int tag;
+    final Connection connection;
+    final GameSession game;
+    // Commands in the order they arrived, applied before the next tick.
+    final InputQueue commands = new InputQueue(16);
+    volatile boolean closed;
+
+    ServerSession(int id, int tag, Connection connection, GameSession game) {
+        this.id = id;
+        this.tag = tag;
+        this.connection = connection;
+        this.game = game;
+    }
+}
@@ -0,0 +1,185 @@
+package net.dimatomp.tetris.sim;
+
+import net.dimatomp.tetris.Area;
+import net.dimatomp.tetris.TetrisModel;
+import net.dimatomp.tetris.bot.Bot;
+import net.dimatomp.tetris.bot.Heuristic;
+import net.dimatomp.tetris.bot.PlacementSearch;
+import net.dimatomp.tetris.bot.TranspositionCache;
+
+import java.util.Arrays;
+import java.util.Locale;
+import java.util.concurrent.atomic.AtomicInteger;
+
+// Plays complete games with the bot, as fast as the cores allow, and prints throughput and scores.
+public final class SelfPlay {
+    private static final int FIELD_SIDE = 24;
+
+    private int games = 1000;
+    private int threads = Runtime.getRuntime().availableProcessors();
+    private int width = FIELD_SIDE;
+    private int height = FIELD_SIDE;
+    private int maxPieces = 10000;
+    private int lookahead = 0;
+    private long seed = 1;
+    // Entries of the search cache all threads share, 0 for none. It pays from a lookahead of 2 on.
+    private int cacheSize = 0;
+    private TranspositionCache cache;
+
+    private final AtomicInteger nextGame = new AtomicInteger();
+    private int[] scores;
+    private int[] pieces;
+
+    private SelfPlay() {
+    }
+
+    public static void main(String[] args) throws InterruptedException {
+        SelfPlay selfPlay = new SelfPlay();
+        selfPlay.parse(args);
+        selfPlay.run();
+    }
+
+    private void parse(String[] args) {
+        for (int i = 0; i + 1 < args.length; i += 2) {
+            String value = args[i + 1];
+            switch (args[i]) {
+                case "--games":
+                    games = Integer.parseInt(value);
+                    break;
+                case "--threads":
+                    threads = Integer.parseInt(value);
+                    break;
+                case "--width":
+                    width = Integer.parseInt(value);
+                    break;
+                case "--height":
+                    height = Integer.parseInt(value);
+                    break;
+                case "--max-pieces":
+                    maxPieces = Integer.parseInt(value);
+                    break;
+                case "--lookahead":
+                    lookahead = Integer.parseInt(value);
+                    break;
+                case "--seed":
+                    seed = Long.parseLong(value);
+                    break;
+                case "--cache":
+                    cacheSize = Integer.parseInt(value);
+                    break;
+                default:
+                    throw new IllegalArgumentException("Unknown option " + args[i]);
+            }
+        }
+        if (args.length % 2 != 0)
+            throw new IllegalArgumentException("Missing value for " + args[args.length - 1]);
+        if (width < TetrisModel.MIN_WIDTH || height < TetrisModel.MIN_HEIGHT)
+            throw new IllegalArgumentException("The field has to be at least "
+                    + TetrisModel.MIN_WIDTH + "x" + TetrisModel.MIN_HEIGHT);
+    }
+
+    private void run() throws InterruptedException {
+        scores = new int[games];
+        pieces = new int[games];
+        cache = cacheSize == 0 ? null : new TranspositionCache(cacheSize);
+        Thread[] workers = new Thread[threads];
+        long start = System.nanoTime();
+        for (int i = 0; i < threads; i++) {
+            workers[i] = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    // The search runs on the worker itself, the games already keep every core busy.
+                    Bot bot = new Bot(new PlacementSearch(new Heuristic(), null, cache));
+                    int game;
+                    while ((game = nextGame.getAndIncrement()) < games)
+                        play(bot, game);
+                }
+            }, "self-play-" + i);
+            workers[i].start();
+        }
+        for (Thread worker : workers)
+            worker.join();
+        report(System.nanoTime() - start);
+    }
+
+    private void play(Bot bot, int game) {
+        // Seeds in a row are fine, GameRandom scrambles its state on every draw.
+        TetrisModel model = new TetrisModel(width, height, seed + game);
+        final boolean[] over = new boolean[1];
+        model.registerCallback(new TetrisModel.Callback() {
+            @Override
+            public void onLinesRemoved(int... pos) {
+            }
+
+            @Override
+            public void onFigureMoved(Area oldArea) {
+            }
+
+            @Override
+            public void onGameOver() {
+                over[0] = true;
+            }
+        });
+        int[] preview = new int[lookahead];
+        for (int i = 0; i < preview.length; i++)
+            preview[i] = nextType(model);
+        model.placeNewFigure(nextType(model), 0);
+        int count = 0;
+        while (!over[0] && count < maxPieces) {
+            if (bot.play(model, preview, Long.MAX_VALUE) == null)
+                break;
+            count++;
+            int type;
+            if (preview.length == 0) {
+                type = nextType(model);
+            } else {
+                type = preview[0];
+                System.arraycopy(preview, 1, preview, 0, preview.length - 1);
+                preview[preview.length - 1] = nextType(model);
+            }
+            model.throwFigure(type, 0);
+        }
+        scores[game] = model.getScore();
+        pieces[game] = count;
+    }
+
+    private static int nextType(TetrisModel model) {
+        return model.getRandom().nextInt(TetrisModel.getFiguresCount());
+    }
+
+    private void report(long nanos) {
+        double seconds = nanos / 1e9;
+        long totalPieces = 0;
+        long totalLines = 0;
+        for (int i = 0; i < games; i++) {
+            totalPieces += pieces[i];
+            totalLines += scores[i];
+        }
+        int[] sorted = scores.clone();
+        Arrays.sort(sorted);
+        System.out.println(String.format(Locale.US, "%d games on %d threads, %dx%d field, %.2f s",
+                games, threads, width, height, seconds));
+        System.out.println(String.format(Locale.US, "games/s %.1f  pieces/s %.0f  lines/s %.0f",
+                games / seconds, totalPieces / seconds, totalLines / seconds));
+        if (cache != null) {
+            long lookups = cache.getHits() + cache.getMisses();
+            System.out.println(String.format(Locale.US, "cache %d entries  hits %.1f%% of %d lookups",
+                    cache.getCapacity(), lookups == 0 ? 0 : 100.0 * cache.getHits() / lookups, lookups));
+        }
+        if (games == 0)
+            return;
+        System.out.println(String.format(Locale.US, "score mean %.1f  min %d  p10 %d  p50 %d  p90 %d  p99 %d  max %d",
+                (double) totalLines / games, sorted[0], percentile(sorted, 10), percentile(sorted, 50),
+                percentile(sorted, 90), percentile(sorted, 99), sorted[games - 1]));
+        int capped = 0;
+        for (int count : pieces)
+            if (count == maxPieces)
+                capped++;
+        if (capped != 0)
+            System.out.println(capped + " games stopped at the " + maxPieces + " piece limit");
+    }
+
+    private static int percentile(int[] sorted, int percent) {
+        return sorted[(int) ((long) (sorted.length - 1) * percent / 100)];
+    }
+}
@@ -0,0 +1,254 @@
+package net.dimatomp.tetris.stats;
+
+import net.dimatomp.tetris.metrics.Counter;
+import net.dimatomp.tetris.metrics.Metrics;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Locale;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicLong;
+
+// Fixed size records appended to memory mapped segment files, events-<number>.log in one directory.
+// An append is a few stores into the mapping, the kernel writes the pages back on its own. A full
+// segment is left for the next one and the oldest are deleted, so the log never takes more than
+// segmentBytes * (maxSegments + 1) of disk. Once a segment is half full, the next one is mapped and the
+// old ones deleted on the background executor, so that appends on a game thread touch no files; only
+// when that falls behind does an append map the next segment itself.
+// Record: type byte, argument byte, two reserved bytes, then big endian ints for game, tick and value.
+// The type is stored last and 0 marks the unwritten end of a segment.
+public final class EventLog implements Closeable {
+    public static final int RECORD_SIZE = 16;
+    // Value: score. Argument: 1 for a game continued from a snapshot.
+    public static final int GAME_START = 1;
+    // A figure locked. Argument: lines it removed. Value: score.
+    public static final int PIECE = 2;
+    // The player moved the figure sideways, turned it or dropped it.
+    public static final int ACTION = 3;
+    // Value: final score.
+    public static final int GAME_OVER = 4;
+    private static final String PREFIX = "events-";
+    private static final String SUFFIX = ".log";
+    private static final Counter droppedEvents = Metrics.counter("stats.droppedEvents");
+
+    private final File directory;
+    private final int segmentBytes;
+    private final int maxSegments;
+    // Where a segment is half full.
+    private final int prepareOffset;
+    private final Executor background;
+    private volatile int oldestSegment;
+    // Only touched by the background tasks, which the executor runs one at a time.
+    private int firstUndeleted;
+    // Guarded by this.
+    private int segment;
+    private MappedByteBuffer mapping;
+    private int offset;
+    // The mapping of segment + 1 once prepared, and whether a task preparing it is queued.
+    private MappedByteBuffer nextMapping;
+    private boolean preparing;
+    // Position after the last record appended, what readers may read up to.
+    private final AtomicLong end = new AtomicLong();
+
+    // The background executor must run its tasks one at a time, in order.
+    public EventLog(File directory, int segmentBytes, int maxSegments, Executor background) throws IOException {
+        this.directory = directory;
+        this.segmentBytes = segmentBytes / RECORD_SIZE * RECORD_SIZE;
+        this.maxSegments = maxSegments;
+        prepareOffset = this.segmentBytes / 2 / RECORD_SIZE * RECORD_SIZE;
+        this.background = background;
+        if (!directory.isDirectory() && !directory.mkdirs())
+            throw new IOException("Could not create " + directory);
+        int first = Integer.MAX_VALUE;
+        int last = -1;
+        String[] names = directory.list();
+        if (names != null) {
+            for (String name : names) {
+                int number = segmentNumber(name);
+                if (number >= 0) {
+                    first = Math.min(first, number);
+                    last = Math.max(last, number);
+                }
+            }
+        }
+        segment = Math.max(0, last);
+        // A segment prepared ahead but never written to, its predecessor may still have room.
+        if (segment > first && file(segment).length() == this.segmentBytes
+                && map(segment).get(0) == 0 && file(segment).delete())
+            segment--;
+        oldestSegment = Math.min(first, segment);
+        firstUndeleted = oldestSegment;
+        mapping = map(segment);
+        // Records are written front to back, the written ones are a prefix of the segment.
+        int low = 0;
+        int high = this.segmentBytes / RECORD_SIZE;
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            if (mapping.get(middle * RECORD_SIZE) != 0)
+                low = middle + 1;
+            else
+                high = middle;
+        }
+        offset = low * RECORD_SIZE;
+        end.set(position(segment, offset));
+        synchronized (this) {
+            prepareIfDue();
+        }
+    }
+
+    // Positions in the log hold the segment number in the high half and the byte offset in the low half.
+    public static long position(int segment, int offset) {
+        return (long) segment << 32 | offset;
+    }
+
+    public long getEnd() {
+        return end.get();
+    }
+
+    // Any thread; false when the record was dropped because the log could not grow.
+    public synchronized boolean append(int type, int argument, int game, int tick, int value) {
+        if (mapping != null && offset == segmentBytes) {
+            try {
+                rotate();
+            } catch (IOException e) {
+                mapping = null;
+            }
+        }
+        if (mapping == null) {
+            droppedEvents.increment();
+            return false;
+        }
+        mapping.put(offset + 1, (byte) argument);
+        mapping.putInt(offset + 4, game);
+        mapping.putInt(offset + 8, tick);
+        mapping.putInt(offset + 12, value);
+        mapping.put(offset, (byte) type);
+        offset += RECORD_SIZE;
+        end.lazySet(position(segment, offset));
+        if (offset == prepareOffset)
+            prepareIfDue();
+        return true;
+    }
+
+    private void rotate() throws IOException {
+        MappedByteBuffer next = nextMapping;
+        nextMapping = null;
+        mapping = next != null ? next : map(segment + 1);
+        segment++;
+        offset = 0;
+        oldestSegment = Math.max(oldestSegment, segment - maxSegments + 1);
+        if (offset == prepareOffset)
+            prepareIfDue();
+    }
+
+    // Under the lock, once a segment. A failed preparation is not retried, the rotation maps it instead.
+    private void prepareIfDue() {
+        if (preparing || nextMapping != null || mapping == null || offset < segmentBytes / 2)
+            return;
+        preparing = true;
+        background.execute(new Runnable() {
+            @Override
+            public void run() {
+                prepare();
+            }
+        });
+    }
+
+    // On the background executor: deletes the segments past the oldest kept and maps the next one.
+    private void prepare() {
+        for (; firstUndeleted < oldestSegment; firstUndeleted++)
+            if (file(firstUndeleted).exists() && !file(firstUndeleted).delete())
+                droppedEvents.increment();
+        int number;
+        synchronized (this) {
+            number = segment + 1;
+        }
+        MappedByteBuffer next = null;
+        try {
+            next = map(number);
+        } catch (IOException e) {
+            // Left to the append that fills the segment, which drops the record if it fails as well.
+        }
+        synchronized (this) {
+            preparing = false;
+            // Rotated meanwhile by an append that could not wait.
+            if (number == segment + 1 && mapping != null)
+                nextMapping = next;
+        }
+    }
+
+    // Copies whole records from position up to the end of the log into target, as many as fit, and
+    // returns the position after them. Records deleted by rotation since are skipped.
+    public long read(long position, ByteBuffer target) throws IOException {
+        long stop = end.get();
+        int number = (int) (position >>> 32);
+        int from = (int) position;
+        if (number < oldestSegment) {
+            number = oldestSegment;
+            from = 0;
+        }
+        while (position(number, from) != stop && target.remaining() >= RECORD_SIZE) {
+            if (from == segmentBytes) {
+                number++;
+                from = 0;
+                continue;
+            }
+            int to = number == (int) (stop >>> 32) ? (int) stop : segmentBytes;
+            int count = Math.min(to - from, target.remaining() / RECORD_SIZE * RECORD_SIZE);
+            int limit = target.limit();
+            target.limit(target.position() + count);
+            try (RandomAccessFile file = new RandomAccessFile(file(number), "r")) {
+                FileChannel channel = file.getChannel();
+                while (target.hasRemaining())
+                    if (channel.read(target, from + count - target.remaining()) < 0)
+                        throw new IOException("Segment " + number + " is truncated");
+            } catch (FileNotFoundException e) {
+                // Deleted under the reader, continue with what is left.
+                number = Math.max(number + 1, oldestSegment);
+                from = 0;
+                continue;
+            } finally {
+                target.limit(limit);
+            }
+            from += count;
+        }
+        return position(number, from);
+    }
+
+    // Stops appending, the records stay readable.
+    @Override
+    public synchronized void close() {
+        if (mapping != null)
+            mapping.force();
+        mapping = null;
+        nextMapping = null;
+    }
+
+    private MappedByteBuffer map(int number) throws IOException {
+        try (RandomAccessFile file = new RandomAccessFile(file(number), "rw")) {
+            file.setLength(segmentBytes);
+            // The mapping stays valid after the file is closed.
+            return file.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, segmentBytes);
+        }
+    }
+
+    private File file(int number) {
+        return new File(directory, String.format(Locale.US, "%s%08d%s", PREFIX, number, SUFFIX));
+    }
+
+    private static int segmentNumber(String name) {
+        if (!name.startsWith(PREFIX) || !name.endsWith(SUFFIX))
+            return -1;
+        try {
+            return Integer.parseInt(name.substring(PREFIX.length(), name.length() - SUFFIX.length()));
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+}
@@ -0,0 +1,76 @@
+package net.dimatomp.tetris.stats;
+
+import net.dimatomp.tetris.Area;
+import net.dimatomp.tetris.GameSession;
+import net.dimatomp.tetris.TetrisModel;
+
+// Logs one game from the callbacks of its model, on the thread that plays it. Times are session ticks,
+// so pauses do not count. Actions are the moves only a player makes: sideways steps, turns and hard
+// drops. Falling by one row is left out, gravity does that as well.
+public final class EventRecorder implements TetrisModel.Callback {
+    private final EventLog log;
+    private final GameSession session;
+    private final TetrisModel model;
+    private final int game;
+    private long lockCount;
+    private int figureType;
+    private int turnDegree;
+    private int x;
+    private int y;
+    private int score;
+
+    // Register it on the session's model before the game thread starts.
+    public EventRecorder(EventLog log, GameSession session, int game) {
+        this.log = log;
+        this.session = session;
+        this.model = session.getModel();
+        this.game = game;
+        lockCount = model.getLockCount();
+        score = model.getScore();
+        track();
+        log.append(EventLog.GAME_START, lockCount == 0 ? 0 : 1, game, tick(), model.getScore());
+    }
+
+    public GameSession getSession() {
+        return session;
+    }
+
+    @Override
+    public void onLinesRemoved(int... pos) {
+        // Counted from the score, a lock that ends the game removes lines without this call.
+    }
+
+    @Override
+    public void onFigureMoved(Area oldArea) {
+        if (model.getLockCount() != lockCount)
+            logPiece();
+        else if (model.getFigureType() == figureType && (model.getX() != x || model.getTurnDegree() != turnDegree
+                || model.getY() - y > 1))
+            log.append(EventLog.ACTION, 0, game, tick(), model.getScore());
+        track();
+    }
+
+    @Override
+    public void onGameOver() {
+        if (model.getLockCount() != lockCount)
+            logPiece();
+        log.append(EventLog.GAME_OVER, 0, game, tick(), model.getScore());
+    }
+
+    private void logPiece() {
+        log.append(EventLog.PIECE, model.getScore() - score, game, tick(), model.getScore());
+        lockCount = model.getLockCount();
+        score = model.getScore();
+    }
+
+    private void track() {
+        figureType = model.getFigureType();
+        turnDegree = model.getTurnDegree();
+        x = model.getX();
+        y = model.getY();
+    }
+
+    private int tick() {
+        return (int) session.getTick();
+    }
+}
@@ -0,0 +1,194 @@
+package net.dimatomp.tetris.stats;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+// Folds the event log into summaries of the last RECENT_GAMES finished games and of all of them.
+// update() and the persistence run on one background thread; the summaries are immutable and can be
+// read from any thread at any time, e.g. by a menu that shows them right away.
+public final class StatsAggregator {
+    public static final int RECENT_GAMES = 20;
+    static final int MAX_LINES = 4;
+    // Games left without an end, like one continued under a new id after a restart, are dropped
+    // once this many newer ones started.
+    private static final int MAX_RUNNING = 8;
+    private static final int VERSION = 1;
+
+    private final EventLog log;
+    private final ByteBuffer buffer = ByteBuffer.allocateDirect(256 * EventLog.RECORD_SIZE);
+    private long position;
+    // Games not over yet, by id, oldest first.
+    private final Map<Integer, Tally> running = new LinkedHashMap<Integer, Tally>() {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Integer, Tally> eldest) {
+            return size() > MAX_RUNNING;
+        }
+    };
+    // Ring of the last finished games, next is where the following one goes.
+    private final Tally[] recent = new Tally[RECENT_GAMES];
+    private int next;
+    private final Tally total = new Tally();
+    private volatile StatsSummary recentSummary = StatsSummary.EMPTY;
+    private volatile StatsSummary totalSummary = StatsSummary.EMPTY;
+
+    public StatsAggregator(EventLog log) {
+        this.log = log;
+    }
+
+    public StatsSummary getRecent() {
+        return recentSummary;
+    }
+
+    public StatsSummary getTotal() {
+        return totalSummary;
+    }
+
+    // Reads what was appended since the last call, false if there was nothing.
+    public boolean update() throws IOException {
+        boolean consumed = false;
+        while (true) {
+            buffer.clear();
+            position = log.read(position, buffer);
+            buffer.flip();
+            if (!buffer.hasRemaining())
+                break;
+            consumed = true;
+            while (buffer.hasRemaining())
+                apply(buffer.get(), buffer.get(), buffer.getShort(), buffer.getInt(), buffer.getInt(), buffer.getInt());
+        }
+        if (consumed)
+            publish();
+        return consumed;
+    }
+
+    private void apply(int type, int argument, int reserved, int game, int tick, int value) {
+        Tally tally = running.get(game);
+        if (tally == null) {
+            tally = new Tally();
+            tally.games = 1;
+            tally.firstTick = tick;
+            running.put(game, tally);
+        }
+        tally.lastTick = tick;
+        tally.score = value;
+        switch (type) {
+            case EventLog.PIECE:
+                tally.pieces++;
+                if (argument > 0)
+                    tally.lines[Math.min(argument, MAX_LINES)]++;
+                break;
+            case EventLog.ACTION:
+                tally.actions++;
+                break;
+            case EventLog.GAME_OVER:
+                running.remove(game);
+                tally.ticks = tally.lastTick - tally.firstTick;
+                total.add(tally);
+                recent[next] = tally;
+                next = (next + 1) % RECENT_GAMES;
+                break;
+        }
+    }
+
+    private void publish() {
+        Tally sum = new Tally();
+        for (Tally tally : recent)
+            if (tally != null)
+                sum.add(tally);
+        recentSummary = sum.toSummary();
+        totalSummary = total.toSummary();
+    }
+
+    public void save(DataOutput out) throws IOException {
+        out.writeInt(VERSION);
+        out.writeLong(position);
+        total.write(out);
+        out.writeInt(next);
+        for (Tally tally : recent) {
+            out.writeBoolean(tally != null);
+            if (tally != null)
+                tally.write(out);
+        }
+        out.writeInt(running.size());
+        for (Map.Entry<Integer, Tally> entry : running.entrySet()) {
+            out.writeInt(entry.getKey());
+            entry.getValue().write(out);
+        }
+    }
+
+    // Before the first update(), with what save() wrote.
+    public void load(DataInput in) throws IOException {
+        int version = in.readInt();
+        if (version != VERSION)
+            throw new IOException("Unsupported statistics version " + version);
+        position = in.readLong();
+        total.read(in);
+        next = in.readInt();
+        for (int i = 0; i < RECENT_GAMES; i++) {
+            recent[i] = null;
+            if (in.readBoolean())
+                (recent[i] = new Tally()).read(in);
+        }
+        running.clear();
+        for (int i = in.readInt(); i > 0; i--) {
+            int game = in.readInt();
+            Tally tally = new Tally();
+            tally.read(in);
+            running.put(game, tally);
+        }
+        publish();
+    }
+
+    private static final class Tally {
+        int games;
+        long pieces;
+        final long[] lines = new long[MAX_LINES + 1];
+        long actions;
+        long ticks;
+        long score;
+        int firstTick;
+        int lastTick;
+
+        void add(Tally other) {
+            games += other.games;
+            pieces += other.pieces;
+            for (int i = 0; i < lines.length; i++)
+                lines[i] += other.lines[i];
+            actions += other.actions;
+            ticks += other.ticks;
+            score += other.score;
+        }
+
+        StatsSummary toSummary() {
+            return new StatsSummary(games, pieces, lines, actions, ticks, score);
+        }
+
+        void write(DataOutput out) throws IOException {
+            out.writeInt(games);
+            out.writeLong(pieces);
+            for (long count : lines)
+                out.writeLong(count);
+            out.writeLong(actions);
+            out.writeLong(ticks);
+            out.writeLong(score);
+            out.writeInt(firstTick);
+            out.writeInt(lastTick);
+        }
+
+        void read(DataInput in) throws IOException {
+            games = in.readInt();
+            pieces = in.readLong();
+            for (int i = 0; i < lines.length; i++)
+                lines[i] = in.readLong();
+            actions = in.readLong();
+            ticks = in.readLong();
+            score = in.readLong();
+            firstTick = in.readInt();
+            lastTick = in.readInt();
+        }
+    }
+}
@@ -0,0 +1,54 @@
+package net.dimatomp.tetris.stats;
+
+import net.dimatomp.tetris.GameSession;
+
+// Totals over some finished games, and the averages shown from them.
+public final class StatsSummary {
+    public static final StatsSummary EMPTY = new StatsSummary(0, 0, new long[StatsAggregator.MAX_LINES + 1], 0, 0, 0);
+    private static final double TICKS_PER_MINUTE = 60e9 / GameSession.TICK_NANOS;
+
+    private final int games;
+    private final long pieces;
+    private final long[] lines;
+    private final long actions;
+    private final long ticks;
+    private final long score;
+
+    StatsSummary(int games, long pieces, long[] lines, long actions, long ticks, long score) {
+        this.games = games;
+        this.pieces = pieces;
+        this.lines = lines.clone();
+        this.actions = actions;
+        this.ticks = ticks;
+        this.score = score;
+    }
+
+    public int getGames() {
+        return games;
+    }
+
+    public long getPieces() {
+        return pieces;
+    }
+
+    // Number of locks that removed this many lines at once, from 1 for singles to 4 for tetrises.
+    public long getClears(int linesAtOnce) {
+        return lines[linesAtOnce];
+    }
+
+    public double getAveragePieces() {
+        return games == 0 ? 0 : (double) pieces / games;
+    }
+
+    public double getAverageScore() {
+        return games == 0 ? 0 : (double) score / games;
+    }
+
+    public double getActionsPerMinute() {
+        return ticks == 0 ? 0 : actions * TICKS_PER_MINUTE / ticks;
+    }
+
+    public double getMillisPerPiece() {
+        return pieces == 0 ? 0 : ticks * (GameSession.TICK_NANOS / 1e6) / pieces;
+    }
+}